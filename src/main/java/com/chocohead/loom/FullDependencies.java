@@ -4,6 +4,7 @@ import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
@@ -12,20 +13,81 @@ import dev.jeka.core.api.depmanagement.JkDependency;
 import dev.jeka.core.api.depmanagement.JkDependencyNode;
 import dev.jeka.core.api.depmanagement.JkDependencyResolver;
 import dev.jeka.core.api.depmanagement.JkDependencySet;
+import dev.jeka.core.api.depmanagement.JkModuleId;
 import dev.jeka.core.api.depmanagement.JkRepo;
 import dev.jeka.core.api.depmanagement.JkRepoSet;
 import dev.jeka.core.api.depmanagement.JkResolveResult;
 import dev.jeka.core.api.depmanagement.JkScope;
+import dev.jeka.core.api.depmanagement.JkVersion;
 import dev.jeka.core.api.depmanagement.JkVersionedModule;
 import dev.jeka.core.api.file.JkPathSequence;
 import dev.jeka.core.api.utils.JkUtilsAssert;
 import dev.jeka.core.api.utils.JkUtilsIterable;
 
 public class FullDependencies {
+	/** Everything about a single resolution of the dependencies, so each query doesn't need to resolve them again */
+	public static final class Resolution {
+		private final JkResolveResult result;
+		private List<Path> files;
+		private List<JkDependencyNode> depthTree, breadthTree;
+
+		Resolution(JkResolveResult result) {
+			this.result = result;
+		}
+
+		public JkResolveResult getResult() {
+			return result;
+		}
+
+		public synchronized List<Path> getFiles() {
+			if (files == null) {
+				files = Collections.unmodifiableList(result.assertNoError().getFiles().getEntries());
+			}
+
+			return files;
+		}
+
+		public JkDependencyNode getTree() {
+			return result.getDependencyTree();
+		}
+
+		public synchronized List<JkDependencyNode> getDepthTree() {
+			if (depthTree == null) {
+				depthTree = Collections.unmodifiableList(getTree().toFlattenList());
+			}
+
+			return depthTree;
+		}
+
+		public synchronized List<JkDependencyNode> getBreadthTree() {
+			if (breadthTree == null) {
+				Queue<JkDependencyNode> toDig = new ArrayDeque<>();
+				toDig.addAll(getTree().getChildren());
+
+				List<JkDependencyNode> out = new ArrayList<>();
+				while (!toDig.isEmpty()) {
+					JkDependencyNode node = toDig.poll();
+					out.add(node);
+					toDig.addAll(node.getChildren());
+				}
+
+				breadthTree = Collections.unmodifiableList(out);
+			}
+
+			return breadthTree;
+		}
+
+		public JkVersion getVersionOf(JkModuleId module) {
+			return result.assertNoError().getVersionOf(module);
+		}
+	}
+
 	private final JkDependencySet dependencies;
 	final JkRepoSet repos;
 	final JkScope[] scopes;
 	private JkDependencyResolver resolver;
+	/** The last resolution of the dependencies, or {@code null} if they've not been resolved since anything changed */
+	private volatile Resolution resolution;
 
 	FullDependencies(JkDependencySet dependencies, JkRepoSet repos, JkScope[] scopes) {
 		this.dependencies = dependencies;
@@ -80,7 +142,7 @@ public class FullDependencies {
 		return repos;
 	}
 
-	public JkDependencyResolver getResolver() {
+	public synchronized JkDependencyResolver getResolver() {
 		if (resolver == null) {
 			resolver = JkDependencyResolver.of(repos);
 		}
@@ -88,12 +150,42 @@ public class FullDependencies {
 		return resolver;
 	}
 
-	public void setModuleHolder(JkVersionedModule module) {
+	public synchronized void setModuleHolder(JkVersionedModule module) {
 		resolver = getResolver().withModuleHolder(module);
+		invalidate();
+	}
+
+	/**
+	 * Forgets the last resolution of the dependencies, so the next query will resolve them again.
+	 * This is only needed if something outside of the dependencies has changed, such as the contents of a repository.
+	 */
+	public void invalidate() {
+		resolution = null;
+	}
+
+	/**
+	 * Resolves the dependencies, or returns the last resolution if they have already been resolved
+	 *
+	 * @return The resolution of the dependencies, from which the files, tree and versions can all be found
+	 */
+	public Resolution resolveAll() {
+		Resolution resolution = this.resolution;
+
+		if (resolution == null) {
+			synchronized (this) {
+				resolution = this.resolution;
+
+				if (resolution == null) {
+					this.resolution = resolution = new Resolution(getResolver().resolve(dependencies, scopes));
+				}
+			}
+		}
+
+		return resolution;
 	}
 
 	public JkResolveResult resolve() {
-		return getResolver().resolve(dependencies, scopes);
+		return resolveAll().getResult();
 	}
 
 	public JkPathSequence resolveToSequence() {
@@ -101,25 +193,15 @@ public class FullDependencies {
 	}
 
 	public List<Path> resolveToPaths() {
-		return resolveToSequence().getEntries();
+		return resolveAll().getFiles();
 	}
 
 	public List<JkDependencyNode> toDepthTree() {
-		return resolve().getDependencyTree().toFlattenList();
+		return resolveAll().getDepthTree();
 	}
 
 	public List<JkDependencyNode> toBreadthTree() {
-		Queue<JkDependencyNode> toDig = new ArrayDeque<>();
-		toDig.addAll(resolve().getDependencyTree().getChildren());
-
-		List<JkDependencyNode> out = new ArrayList<>();
-		while (!toDig.isEmpty()) {
-			JkDependencyNode node = toDig.poll();
-			out.add(node);
-			toDig.addAll(node.getChildren());
-		}
-
-		return out;
+		return resolveAll().getBreadthTree();
 	}
 
 	@Override
@@ -77,7 +77,7 @@ public final class FullDependency extends FullDependencies {
 	}
 
 	public JkVersion getResolvedVersion() {
-		return resolve().assertNoError().getVersionOf(getModuleID());
+		return resolveAll().getVersionOf(getModuleID());
 	}
 
 	@Override
@@ -12,6 +12,8 @@ import dev.jeka.core.tool.JkDocPluginDeps;
 import dev.jeka.core.tool.JkPlugin;
 import dev.jeka.core.tool.builtins.java.JkPluginJava;
 
+import com.chocohead.loom.minecraft.RemapStore;
+
 @JkDocPluginDeps(JkPluginJava.class)
 public class JkPluginLoom extends JkPlugin {
 	/** Cache for persistently storing anything related to the project */
@@ -20,6 +22,18 @@ public class JkPluginLoom extends JkPlugin {
 	@JkDoc("Whether to avoid accessing remote resources in favour of local caches.")
 	public boolean runOffline = false;
 
+	@JkDoc("Whether to fetch and remap the client and server jars at the same time rather than one after the other, and to prepare remapping whilst they are merged.")
+	public boolean concurrentSetup = false;
+
+	@JkDoc("Whether to remap the merged Minecraft jar straight to named, only producing the Intermediary jar when it is needed.")
+	public boolean directRemap = false;
+
+	@JkDoc("Whether to keep remapped mods in a store shared between projects, linking them into each project rather than remapping them for every one.")
+	public boolean shareRemappedMods = false;
+
+	@JkDoc("How many megabytes the shared store of remapped mods can grow to before the least recently used mods are removed.")
+	public long sharedRemapStoreSize = 2048;
+
 	protected JkPluginLoom(JkCommands commands) {
 		super(commands);
 
@@ -45,4 +59,8 @@ public class JkPluginLoom extends JkPlugin {
 		JkUtilsPath.createDirectories(cache);
 		return cache;
 	}
+
+	public RemapStore sharedRemapStore() {
+		return new RemapStore(globalCache.resolve("remapped-mods"), sharedRemapStoreSize * 1024 * 1024);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import dev.jeka.core.api.system.JkLog;
+
+import com.chocohead.loom.util.ArtifactCache;
+
+/**
+ * A single jar holding just the class names, supertypes and member signatures of a classpath,
+ * which is all a remapper needs from the classpath so is much quicker to read than the original jars
+ */
+final class ClasspathIndex {
+	/** The time every entry in the index is given, so the same classpath always makes the same bytes wherever it is indexed */
+	private static final long ENTRY_TIME = 318211200000L; //1980-02-01, clear of the earliest time a zip can hold in any time zone
+
+	private ClasspathIndex() {
+	}
+
+	/**
+	 * Makes the key which changes whenever any of the given classpath entries do
+	 *
+	 * @param classpath The jars and directories making up the classpath
+	 *
+	 * @return A key identifying the given classpath
+	 *
+	 * @throws IOException If an exception occurs reading the attributes of the classpath entries
+	 */
+	private static String makeKey(Path... classpath) throws IOException {
+		List<Object> inputs = new ArrayList<>(classpath.length * 3);
+
+		for (Path entry : classpath) {
+			inputs.add(entry.toAbsolutePath().normalize());
+
+			if (Files.exists(entry)) {
+				BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+				inputs.add(attributes.size());
+				inputs.add(attributes.lastModifiedTime().toMillis());
+			} else {
+				inputs.add(-1);
+				inputs.add(-1);
+			}
+		}
+
+		return ArtifactCache.makeKey(inputs.toArray());
+	}
+
+	/**
+	 * Gets the index for the given classpath, making it at the given path if it is missing or was made from a different classpath
+	 *
+	 * @param index Where the index jar should be
+	 * @param classpath The jars and directories making up the classpath, earlier entries taking priority over later ones
+	 *
+	 * @return The path to the index jar for the classpath
+	 *
+	 * @throws IOException If an exception occurs reading the classpath or writing the index
+	 */
+	static Path of(Path index, Path... classpath) throws IOException {
+		ArtifactCache.makeIfInvalid(index, makeKey(classpath), to -> {
+			long start = System.nanoTime();
+			int classes = write(to, classpath);
+			JkLog.trace("Indexed " + classes + " classes from " + classpath.length + " classpath entries in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+		});
+
+		return index;
+	}
+
+	private static int write(Path to, Path... classpath) throws IOException {
+		Set<String> seen = new HashSet<>();
+
+		try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(to)))) {
+			for (Path entry : classpath) {
+				if (Files.notExists(entry)) continue;
+
+				if (Files.isDirectory(entry)) {
+					index(entry, out, seen);
+				} else {
+					try (FileSystem fs = FileSystems.newFileSystem(entry, (ClassLoader) null)) {
+						for (Path root : fs.getRootDirectories()) {
+							index(root, out, seen);
+						}
+					}
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return seen.size();
+	}
+
+	private static void index(Path root, ZipOutputStream out, Set<String> seen) throws IOException {
+		List<Path> classes;
+		try (Stream<Path> stream = Files.walk(root)) {
+			classes = stream.filter(path -> path.toString().endsWith(".class") && Files.isRegularFile(path)).sorted().collect(Collectors.toList());
+		}
+
+		for (Path file : classes) {
+			String name = root.relativize(file).toString().replace('\\', '/');
+			if (!seen.add(name)) continue; //Earlier entries on the classpath win
+
+			ZipEntry entry = new ZipEntry(name);
+			entry.setTime(ENTRY_TIME);
+			out.putNextEntry(entry);
+			out.write(strip(Files.readAllBytes(file)));
+			out.closeEntry();
+		}
+	}
+
+	/** Removes everything from the given class apart from its structure, no method bodies, debug information or stack frames */
+	static byte[] strip(byte[] bytes) {
+		ClassReader reader = new ClassReader(bytes);
+		ClassWriter writer = new ClassWriter(0);
+		reader.accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,130 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.chocohead.loom.minecraft.MinecraftVersions.Version;
+import com.chocohead.loom.util.FileUtils;
+
+/**
+ * The id and URL of every version in the version manifest, along with when the manifest was last checked to be up to date,
+ * so finding a version doesn't need the whole manifest parsing again (or the manifest downloading again whilst it is still fresh)
+ *
+ * <p>The layout is a header of the magic, version, the size and last modified time of the manifest the index was made from,
+ * and the time the manifest was last checked; followed by the number of versions then the id and URL of each</p>
+ */
+final class ManifestIndex {
+	private static final int MAGIC = 0x4D435649; //MCVI
+	private static final int VERSION = 1;
+
+	private final long manifestSize, manifestModified;
+	final long checked;
+	private final Map<String, Version> versions;
+
+	private ManifestIndex(long manifestSize, long manifestModified, long checked, Map<String, Version> versions) {
+		this.manifestSize = manifestSize;
+		this.manifestModified = manifestModified;
+		this.checked = checked;
+		this.versions = versions;
+	}
+
+	static Path pathFor(Path manifest) {
+		return manifest.resolveSibling(manifest.getFileName() + ".index");
+	}
+
+	/**
+	 * Reads the index for the given manifest, so long as it was made from the manifest as it is now
+	 *
+	 * @param manifest The version manifest the index is for
+	 *
+	 * @return The index for the manifest, or {@code null} if it is missing, unreadable or out of date
+	 */
+	static ManifestIndex read(Path manifest) {
+		Path index = pathFor(manifest);
+		if (Files.notExists(index) || Files.notExists(manifest)) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+			long manifestSize = in.readLong();
+			long manifestModified = in.readLong();
+			long checked = in.readLong();
+
+			BasicFileAttributes attributes = Files.readAttributes(manifest, BasicFileAttributes.class);
+			if (attributes.size() != manifestSize || attributes.lastModifiedTime().toMillis() != manifestModified) return null;
+
+			int count = in.readInt();
+			Map<String, Version> versions = new LinkedHashMap<>(count * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				String id = in.readUTF();
+				versions.put(id, new Version(id, new URL(in.readUTF())));
+			}
+
+			return new ManifestIndex(manifestSize, manifestModified, checked, Collections.unmodifiableMap(versions));
+		} catch (IOException e) {
+			return null; //Making it again will fix it
+		}
+	}
+
+	/**
+	 * Makes the index for the given manifest, reusing the given index if it was already made from the manifest as it is now
+	 *
+	 * @param manifest The version manifest to index
+	 * @param existing The index which was previously made for the manifest, or {@code null} if there isn't one
+	 * @param checked When the manifest was last checked to be up to date
+	 *
+	 * @return The index for the manifest
+	 *
+	 * @throws IOException If an exception occurs reading the manifest or writing the index
+	 */
+	static ManifestIndex write(Path manifest, ManifestIndex existing, long checked) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(manifest, BasicFileAttributes.class);
+		long manifestSize = attributes.size();
+		long manifestModified = attributes.lastModifiedTime().toMillis();
+
+		//Only the check time needs updating if the manifest hasn't changed
+		Map<String, Version> versions = existing != null && existing.manifestSize == manifestSize && existing.manifestModified == manifestModified ? existing.versions : readVersions(manifest);
+
+		FileUtils.writeDataAtomically(pathFor(manifest), out -> {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(manifestSize);
+			out.writeLong(manifestModified);
+			out.writeLong(checked);
+
+			out.writeInt(versions.size());
+			for (Version version : versions.values()) {
+				out.writeUTF(version.getID());
+				out.writeUTF(version.getURL().toString());
+			}
+		});
+
+		return new ManifestIndex(manifestSize, manifestModified, checked, versions);
+	}
+
+	private static Map<String, Version> readVersions(Path manifest) throws IOException {
+		MinecraftVersions manifestVersions;
+		try (Reader reader = Files.newBufferedReader(manifest)) {
+			manifestVersions = MinecraftVersions.GSON.fromJson(reader, MinecraftVersions.class);
+		}
+
+		Map<String, Version> versions = new LinkedHashMap<>();
+		for (Version version : manifestVersions.getVersions()) {
+			versions.put(version.getID(), version);
+		}
+		return Collections.unmodifiableMap(versions);
+	}
+
+	Version get(String id) {
+		return versions.get(id);
+	}
+}
@@ -0,0 +1,181 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+
+import dev.jeka.core.api.system.JkLog;
+
+import net.fabricmc.mappings.ExtendedMappings;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MappingsProvider;
+
+/** Process wide cache of parsed mapping files, bounded by the {@value #SIZE_PROPERTY} system property (defaulting to {@value #DEFAULT_SIZE} files) */
+public final class MappingCache {
+	public static final String SIZE_PROPERTY = "loom.mappingCacheSize";
+	public static final int DEFAULT_SIZE = 4;
+
+	private enum Kind {
+		TINY, FULL_TINY, INDEX;
+	}
+
+	private static final class Key {
+		private final Path file;
+		private final long size, modified;
+		private final Kind kind;
+
+		Key(Path file, Kind kind) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+			this.file = file.toAbsolutePath().normalize();
+			size = attributes.size();
+			modified = attributes.lastModifiedTime().toMillis();
+			this.kind = kind;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+
+			Key that = (Key) obj;
+			return size == that.size && modified == that.modified && kind == that.kind && file.equals(that.file);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(file, size, modified, kind);
+		}
+
+		@Override
+		public String toString() {
+			return file + " (" + kind + ')';
+		}
+	}
+
+	private static final Cache<Key, Object> CACHE = CacheBuilder.newBuilder()
+			.maximumSize(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE))
+			.recordStats()
+			.removalListener(notification -> {
+				if (notification.getCause() == RemovalCause.SIZE) {
+					JkLog.trace("Evicted mappings for " + notification.getKey() + " from cache");
+				}
+			}).build();
+
+	private MappingCache() {
+	}
+
+	public static Mappings read(Path file) throws IOException {
+		return (Mappings) get(new Key(file, Kind.TINY));
+	}
+
+	public static ExtendedMappings readFull(Path file) throws IOException {
+		return (ExtendedMappings) get(new Key(file, Kind.FULL_TINY));
+	}
+
+	/**
+	 * Reads the mappings from the given tiny file, going via its {@link MappingIndex} if it is up to date
+	 *
+	 * @param file The tiny file to read the mappings from
+	 * @param from The namespace to map from
+	 * @param to The namespace to map to
+	 *
+	 * @return A table mapping the given namespaces
+	 *
+	 * @throws IOException If an exception occurs reading the mappings
+	 */
+	static MappingTable readTable(Path file, String from, String to) throws IOException {
+		return readTables(file, new String[][] {{from, to}})[0];
+	}
+
+	/**
+	 * Reads the mappings from the given tiny file as {@link #readTable(Path, String, String)} does, making every projection in the same pass
+	 *
+	 * @param file The tiny file to read the mappings from
+	 * @param projections Pairs of namespaces, each being the namespace to map from followed by the namespace to map to
+	 *
+	 * @return A table for each projection, in the same order as given
+	 *
+	 * @throws IOException If an exception occurs reading the mappings
+	 */
+	static MappingTable[] readTables(Path file, String[]... projections) throws IOException {
+		Path index = MappingIndex.pathFor(file);
+
+		if (MappingIndex.isFresh(index, file)) {
+			try {
+				return ((MappingIndex) get(new Key(index, Kind.INDEX))).makeTables(projections);
+			} catch (IOException e) {
+				JkLog.warn("Unable to read mapping index at " + index + ", falling back to " + file + ": " + e.getMessage());
+			}
+		}
+
+		Mappings mappings = read(file);
+		writeIndex(mappings, index);
+		return MappingTable.of(mappings, projections);
+	}
+
+	/**
+	 * Writes a {@link MappingIndex} for the given tiny file, so future reads can avoid parsing it
+	 *
+	 * @param file The tiny file to index
+	 */
+	static void index(Path file) {
+		try {
+			writeIndex(read(file), MappingIndex.pathFor(file));
+		} catch (IOException e) {
+			JkLog.warn("Unable to read mappings to index at " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static void writeIndex(Mappings mappings, Path index) {
+		try {
+			MappingIndex.write(mappings, index);
+		} catch (IOException e) {
+			//Not the end of the world, the text can always be read instead
+			JkLog.warn("Unable to write mapping index to " + index + ": " + e.getMessage());
+		}
+	}
+
+	private static Object get(Key key) throws IOException {
+		try {
+			return CACHE.get(key, () -> {
+				long start = System.nanoTime();
+
+				Object mappings;
+				if (key.kind == Kind.INDEX) {
+					mappings = MappingIndex.open(key.file);
+				} else {
+					try (InputStream in = Files.newInputStream(key.file)) {
+						mappings = key.kind == Kind.FULL_TINY ? MappingsProvider.readFullTinyMappings(in, false) : MappingsProvider.readTinyMappings(in, false);
+					}
+				}
+
+				JkLog.trace("Loaded mappings from " + key + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+				return mappings;
+			});
+		} catch (ExecutionException e) {
+			Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+			throw new IOException("Error reading mappings", e.getCause());
+		}
+	}
+
+	/**
+	 * Gets the hit, miss, load time and eviction counts of the cache since the process started
+	 *
+	 * @return A snapshot of the cache's current statistics
+	 */
+	public static CacheStats getStats() {
+		return CACHE.stats();
+	}
+}
@@ -0,0 +1,302 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+
+import com.chocohead.loom.util.FileUtils;
+
+/**
+ * A binary form of a tiny file which can be memory mapped and turned into a {@link MappingTable} without parsing the text.
+ * Only the names from the namespaces which are asked for are ever decoded.
+ *
+ * <p>The layout (all big endian ints) is a header of the magic, version, and the namespace, string, class, field and method counts;
+ * followed by the string ID of each namespace; the offset of each string; the string ID of each class in each namespace; the
+ * cumulative end of each class's fields and methods; then the string IDs of each field and method's owner, name and descriptor
+ * in each namespace. Finally the strings themselves, each as a length followed by the UTF-8 bytes. Any missing name is {@code -1}.
+ *
+ * <p>Members are grouped by the class which owns them in the first namespace, so the members of class {@code i} run from the end of
+ * class {@code i - 1} to the end of class {@code i}. Any members without an owner in the class table are left at the end.
+ */
+final class MappingIndex {
+	private static final int MAGIC = 0x4C4D4958; //LMIX
+	private static final int VERSION = 1;
+	private static final int HEADER = 7 * Integer.BYTES;
+	private static final int TRIPLE = 3 * Integer.BYTES;
+
+	private final ByteBuffer buffer;
+	private final String[] namespaces;
+	private final int classCount, fieldCount, methodCount;
+	private final int stringOffsets, classes, memberEnds, fields, methods;
+	/** Lazily decoded strings, races between threads are harmless as they'll decode to equal values */
+	private final String[] strings;
+
+	private MappingIndex(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.getInt(0) != MAGIC) throw new IOException("Not a mapping index");
+		if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported mapping index version: " + buffer.getInt(4));
+		int namespaceCount = buffer.getInt(8);
+		int stringCount = buffer.getInt(12);
+		classCount = buffer.getInt(16);
+		fieldCount = buffer.getInt(20);
+		methodCount = buffer.getInt(24);
+
+		stringOffsets = HEADER + namespaceCount * Integer.BYTES;
+		classes = stringOffsets + stringCount * Integer.BYTES;
+		memberEnds = classes + classCount * namespaceCount * Integer.BYTES;
+		fields = memberEnds + classCount * 2 * Integer.BYTES;
+		methods = fields + fieldCount * namespaceCount * TRIPLE;
+		strings = new String[stringCount];
+
+		namespaces = new String[namespaceCount];
+		for (int i = 0; i < namespaceCount; i++) {
+			namespaces[i] = string(buffer.getInt(HEADER + i * Integer.BYTES));
+		}
+	}
+
+	static Path pathFor(Path tiny) {
+		return tiny.resolveSibling(tiny.getFileName() + ".index");
+	}
+
+	static boolean isFresh(Path index, Path tiny) {
+		if (Files.notExists(index)) return false;
+
+		try {
+			return Files.getLastModifiedTime(index).compareTo(Files.getLastModifiedTime(tiny)) >= 0;
+		} catch (IOException e) {
+			return false; //Can't tell, so don't trust it
+		}
+	}
+
+	static MappingIndex open(Path index) throws IOException {
+		try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+			//The mapping stays valid after the channel is closed
+			return new MappingIndex(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	static void write(Mappings mappings, Path index) throws IOException {
+		String[] namespaces = mappings.getNamespaces().toArray(new String[0]);
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		for (String namespace : namespaces) pool(strings, namespace);
+
+		List<ClassEntry> classList = new ArrayList<>(mappings.getClassEntries());
+		Map<String, Integer> classIndex = new HashMap<>();
+		for (int i = 0; i < classList.size(); i++) {
+			String name = classList.get(i).get(namespaces[0]);
+			if (name != null) classIndex.putIfAbsent(name, i);
+		}
+
+		List<List<EntryTriple[]>> fieldsByClass = new ArrayList<>();
+		List<List<EntryTriple[]>> methodsByClass = new ArrayList<>();
+		for (int i = 0; i <= classList.size(); i++) {//Extra list on the end for any orphans
+			fieldsByClass.add(new ArrayList<>());
+			methodsByClass.add(new ArrayList<>());
+		}
+
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			EntryTriple[] triples = new EntryTriple[namespaces.length];
+			for (int i = 0; i < namespaces.length; i++) triples[i] = entry.get(namespaces[i]);
+			fieldsByClass.get(ownerIndex(triples[0], classIndex, classList.size())).add(triples);
+		}
+
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			EntryTriple[] triples = new EntryTriple[namespaces.length];
+			for (int i = 0; i < namespaces.length; i++) triples[i] = entry.get(namespaces[i]);
+			methodsByClass.get(ownerIndex(triples[0], classIndex, classList.size())).add(triples);
+		}
+
+		//Pool everything up front so the string offsets are known before anything is written
+		for (ClassEntry entry : classList) {
+			for (String namespace : namespaces) pool(strings, entry.get(namespace));
+		}
+		for (List<EntryTriple[]> members : fieldsByClass) poolAll(strings, members);
+		for (List<EntryTriple[]> members : methodsByClass) poolAll(strings, members);
+
+		List<byte[]> encoded = new ArrayList<>(strings.size());
+		for (String string : strings.keySet()) encoded.add(string.getBytes(StandardCharsets.UTF_8));
+
+		int fieldCount = mappings.getFieldEntries().size();
+		int methodCount = mappings.getMethodEntries().size();
+		int stringData = HEADER + (namespaces.length + strings.size() + classList.size() * (namespaces.length + 2)) * Integer.BYTES + (fieldCount + methodCount) * namespaces.length * TRIPLE;
+
+		FileUtils.writeDataAtomically(index, out -> {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(namespaces.length);
+			out.writeInt(strings.size());
+			out.writeInt(classList.size());
+			out.writeInt(fieldCount);
+			out.writeInt(methodCount);
+
+			for (String namespace : namespaces) out.writeInt(strings.get(namespace));
+
+			int offset = stringData;
+			for (byte[] string : encoded) {
+				out.writeInt(offset);
+				offset += Integer.BYTES + string.length;
+			}
+
+			for (ClassEntry entry : classList) {
+				for (String namespace : namespaces) out.writeInt(id(strings, entry.get(namespace)));
+			}
+
+			for (int i = 0, fieldEnd = 0, methodEnd = 0; i < classList.size(); i++) {
+				out.writeInt(fieldEnd += fieldsByClass.get(i).size());
+				out.writeInt(methodEnd += methodsByClass.get(i).size());
+			}
+
+			for (List<EntryTriple[]> members : fieldsByClass) writeAll(out, strings, members);
+			for (List<EntryTriple[]> members : methodsByClass) writeAll(out, strings, members);
+			assert out.size() == stringData;
+
+			for (byte[] string : encoded) {
+				out.writeInt(string.length);
+				out.write(string);
+			}
+		});
+	}
+
+	private static int ownerIndex(EntryTriple triple, Map<String, Integer> classIndex, int orphans) {
+		if (triple == null) return orphans;
+		return classIndex.getOrDefault(triple.getOwner(), orphans);
+	}
+
+	private static void pool(Map<String, Integer> strings, String string) {
+		if (string != null && !strings.containsKey(string)) strings.put(string, strings.size());
+	}
+
+	private static void poolAll(Map<String, Integer> strings, List<EntryTriple[]> members) {
+		for (EntryTriple[] triples : members) {
+			for (EntryTriple triple : triples) {
+				if (triple == null) continue;
+				pool(strings, triple.getOwner());
+				pool(strings, triple.getName());
+				pool(strings, triple.getDesc());
+			}
+		}
+	}
+
+	private static int id(Map<String, Integer> strings, String string) {
+		return string == null ? -1 : strings.get(string);
+	}
+
+	private static void writeAll(DataOutputStream out, Map<String, Integer> strings, List<EntryTriple[]> members) throws IOException {
+		for (EntryTriple[] triples : members) {
+			for (EntryTriple triple : triples) {
+				if (triple == null) {
+					out.writeInt(-1);
+					out.writeInt(-1);
+					out.writeInt(-1);
+				} else {
+					out.writeInt(id(strings, triple.getOwner()));
+					out.writeInt(id(strings, triple.getName()));
+					out.writeInt(id(strings, triple.getDesc()));
+				}
+			}
+		}
+	}
+
+	private String string(int id) {
+		if (id < 0) return null;
+
+		String out = strings[id];
+		if (out == null) {
+			int offset = buffer.getInt(stringOffsets + id * Integer.BYTES);
+			byte[] bytes = new byte[buffer.getInt(offset)];
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + Integer.BYTES);
+			view.get(bytes);
+
+			strings[id] = out = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		return out;
+	}
+
+	public List<String> getNamespaces() {
+		return Arrays.asList(namespaces);
+	}
+
+	private int namespace(String namespace) {
+		for (int i = 0; i < namespaces.length; i++) {
+			if (namespaces[i].equals(namespace)) return i;
+		}
+
+		throw new IllegalArgumentException("Cannot find namespace \"" + namespace + "\" in mappings");
+	}
+
+	MappingTable makeTable(String from, String to) {
+		return makeTables(new String[][] {{from, to}})[0];
+	}
+
+	MappingTable[] makeTables(String[]... projections) {
+		int count = projections.length;
+		int[] fromNS = new int[count];
+		int[] toNS = new int[count];
+		MappingTable.Builder[] builders = new MappingTable.Builder[count];
+
+		for (int i = 0; i < count; i++) {
+			fromNS[i] = namespace(projections[i][0]);
+			toNS[i] = namespace(projections[i][1]);
+			builders[i] = new MappingTable.Builder(classCount, fieldCount, methodCount);
+		}
+
+		int stride = namespaces.length * Integer.BYTES;
+		for (int i = 0, fieldStart = 0, methodStart = 0; i <= classCount; i++) {
+			if (i < classCount) {
+				for (int j = 0; j < count; j++) {
+					String fromName = string(buffer.getInt(classes + i * stride + fromNS[j] * Integer.BYTES));
+					if (fromName != null) builders[j].addClass(fromName, string(buffer.getInt(classes + i * stride + toNS[j] * Integer.BYTES)));
+				}
+			}
+
+			//The members owned by the class, or the orphans once past the last class
+			int fieldEnd = i < classCount ? buffer.getInt(memberEnds + i * 2 * Integer.BYTES) : fieldCount;
+			for (; fieldStart < fieldEnd; fieldStart++) {
+				for (int j = 0; j < count; j++) {
+					int fromTriple = fields + fieldStart * namespaces.length * TRIPLE + fromNS[j] * TRIPLE;
+					if (buffer.getInt(fromTriple) < 0) continue;
+					int toTriple = fields + fieldStart * namespaces.length * TRIPLE + toNS[j] * TRIPLE;
+					builders[j].addField(string(buffer.getInt(fromTriple)), string(buffer.getInt(fromTriple + 4)), string(buffer.getInt(fromTriple + 8)), string(buffer.getInt(toTriple + 4)));
+				}
+			}
+
+			int methodEnd = i < classCount ? buffer.getInt(memberEnds + i * 2 * Integer.BYTES + Integer.BYTES) : methodCount;
+			for (; methodStart < methodEnd; methodStart++) {
+				for (int j = 0; j < count; j++) {
+					int fromTriple = methods + methodStart * namespaces.length * TRIPLE + fromNS[j] * TRIPLE;
+					if (buffer.getInt(fromTriple) < 0) continue;
+					int toTriple = methods + methodStart * namespaces.length * TRIPLE + toNS[j] * TRIPLE;
+					builders[j].addMethod(string(buffer.getInt(fromTriple)), string(buffer.getInt(fromTriple + 4)), string(buffer.getInt(fromTriple + 8)), string(buffer.getInt(toTriple + 4)));
+				}
+			}
+		}
+
+		MappingTable[] tables = new MappingTable[count];
+		for (int i = 0; i < count; i++) {
+			tables[i] = builders[i].build();
+		}
+		return tables;
+	}
+}
@@ -1,23 +1,22 @@
 package com.chocohead.loom.minecraft;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.UncheckedIOException;
-import java.lang.ref.SoftReference;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.function.BiPredicate;
 import java.util.zip.GZIPInputStream;
 
@@ -28,42 +27,51 @@ import dev.jeka.core.api.depmanagement.JkComputedDependency;
 import dev.jeka.core.api.depmanagement.JkDependency;
 import dev.jeka.core.api.depmanagement.JkFileSystemDependency;
 import dev.jeka.core.api.depmanagement.JkModuleId;
-import dev.jeka.core.api.depmanagement.JkResolveResult;
 import dev.jeka.core.api.depmanagement.JkVersionedModule;
 import dev.jeka.core.api.file.JkPathTree;
 import dev.jeka.core.api.system.JkException;
 import dev.jeka.core.api.system.JkLog;
 import dev.jeka.core.api.utils.JkUtilsPath;
 
-import net.fabricmc.mappings.ClassEntry;
-import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.ExtendedMappings;
-import net.fabricmc.mappings.FieldEntry;
 import net.fabricmc.mappings.Mappings;
-import net.fabricmc.mappings.MappingsProvider;
-import net.fabricmc.mappings.MethodEntry;
-import net.fabricmc.mappings.TinyV2Visitor;
 import net.fabricmc.mappings.model.MethodParameter;
 import net.fabricmc.mappings.model.MethodParameterEntry;
-import net.fabricmc.mappings.visitor.ClassVisitor;
-import net.fabricmc.mappings.visitor.FieldVisitor;
-import net.fabricmc.mappings.visitor.MappingsVisitor;
-import net.fabricmc.mappings.visitor.MethodVisitor;
 import net.fabricmc.stitch.commands.CommandMergeTiny;
 import net.fabricmc.stitch.commands.CommandProposeFieldNames;
 import net.fabricmc.tinyremapper.IMappingProvider;
-import net.fabricmc.tinyremapper.MemberInstance;
 
+import com.chocohead.loom.FullDependencies.Resolution;
 import com.chocohead.loom.FullDependency;
+import com.chocohead.loom.util.ArtifactCache;
+import com.chocohead.loom.util.EnigmaConverter;
 import com.chocohead.loom.util.FileUtils;
 import com.chocohead.loom.util.MappingReaders;
-import com.chocohead.loom.util.TinyParamWriter;
-import com.chocohead.loom.util.TinyWriter;
+import com.chocohead.loom.util.TinyV2Converter;
 
 public class MappingResolver {
 	/** An {@link IOException} throwing {@link BiPredicate}{@code <}String, String, IMappingProvider{@code >} */
 	public interface MappingFactory {
 		IMappingProvider create(String fromMapping, String toMapping) throws IOException;
+
+		/**
+		 * Creates a provider for each of the given projections, which implementations can do in a single pass over the mappings
+		 *
+		 * @param projections Pairs of namespaces, each being the namespace to map from followed by the namespace to map to
+		 *
+		 * @return A provider for each projection, in the same order as given
+		 *
+		 * @throws IOException If an exception occurs reading the mappings
+		 */
+		default IMappingProvider[] createAll(String[]... projections) throws IOException {
+			IMappingProvider[] providers = new IMappingProvider[projections.length];
+
+			for (int i = 0; i < projections.length; i++) {
+				providers[i] = create(projections[i][0], projections[i][1]);
+			}
+
+			return providers;
+		}
 	}
 
 	public static abstract class MappingType {
@@ -192,45 +200,64 @@ public class MappingResolver {
 		public abstract void populateCache(boolean offline);
 
 		protected static final IMappingProvider makeProvider(Mappings mappings, String from, String to) {
-			if (!mappings.getNamespaces().contains(from)) {
-				throw new IllegalArgumentException("Cannot find namespace \"" + from + "\" in mappings");
-			}
-			if (!mappings.getNamespaces().contains(to)) {
-				throw new IllegalArgumentException("Cannot find namespace \"" + to + "\" in mappings");
-			}
+			return MappingTable.of(mappings, from, to);
+		}
 
-			return (classes, fields, methods) -> {
-				assert mappings.getNamespaces().contains(from);
-				assert mappings.getNamespaces().contains(to);
+		protected static final IMappingProvider makeProvider(Path mappings, String from, String to) throws IOException {
+			return MappingCache.readTable(mappings, from, to);
+		}
 
-				for (ClassEntry entry : mappings.getClassEntries()) {
-					String fromName = entry.get(from);
-					if (fromName == null) continue;
-					classes.put(fromName, entry.get(to));
+		/** Wraps the given mappings so they also provide the given local variable names, keyed as the remapper expects */
+		protected static final IMappingProvider withLocals(IMappingProvider mappings, Map<String, String[]> locals) {
+			return new IMappingProvider() {
+				@Override
+				public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
+					load(classMap, fieldMap, methodMap);
+					localMap.putAll(locals);
 				}
-				assert !classes.containsKey(null);
-				assert !classes.containsValue(null);
 
-				for (FieldEntry entry : mappings.getFieldEntries()) {
-					EntryTriple fromTriple = entry.get(from);
-					if (fromTriple == null) continue;
-					fields.put(fromTriple.getOwner() + '/' + MemberInstance.getFieldId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+				@Override
+				public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+					mappings.load(classMap, fieldMap, methodMap);
 				}
-				assert !fields.containsKey(null);
-				assert !fields.containsValue(null);
+			};
+		}
 
-				for (MethodEntry entry : mappings.getMethodEntries()) {
-					EntryTriple fromTriple = entry.get(from);
-					if (fromTriple == null) continue;
-					methods.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+		/** Makes a factory for the given tiny file which creates every projection asked for at once together */
+		protected static final MappingFactory makeFactory(Path mappings) {
+			return new MappingFactory() {
+				@Override
+				public IMappingProvider create(String from, String to) throws IOException {
+					return makeProvider(mappings, from, to);
+				}
+
+				@Override
+				public IMappingProvider[] createAll(String[]... projections) throws IOException {
+					return MappingCache.readTables(mappings, projections);
 				}
-				assert !methods.containsKey(null);
-				assert !methods.containsValue(null);
 			};
 		}
 
 		public abstract MappingFactory makeIntermediaryMapper();
 
+		/** The files {@link #makeIntermediaryMapper()} reads from once the cache is populated */
+		protected abstract Path[] getIntermediaryFiles();
+
+		protected static String hashFiles(Path... files) {
+			String[] hashes = new String[files.length];
+
+			for (int i = 0; i < files.length; i++) {
+				//The files all live in Loom's cache, so can be stamped with their hash to avoid reading them again whilst they're unchanged
+				hashes[i] = FileUtils.stampedSHA1(files[i]);
+			}
+
+			return ArtifactCache.makeKey(hashes);
+		}
+
+		public String hashIntermediaries() {
+			return hashFiles(getIntermediaryFiles());
+		}
+
 		protected final Path makeNormal() {
 			return cache.resolve(makePath("tiny").append(".tiny").toString());
 		}
@@ -244,11 +271,55 @@ public class MappingResolver {
 				} catch (IOException e) {
 					throw new UncheckedIOException("Error proposing field names", e);
 				}
+
+				MappingCache.index(normal);
 			}
 		}
 
 		public abstract MappingFactory makeNamedMapper();
 
+		/** The files {@link #makeNamedMapper()} reads from once the mappings are enhanced */
+		protected abstract Path[] getNamedFiles();
+
+		public String hashNamed() {
+			return hashFiles(getNamedFiles());
+		}
+
+		/**
+		 * Makes a factory joining the Intermediary and named mappings, so a jar can be mapped straight to a named namespace without going via Intermediary
+		 *
+		 * @return A factory mapping from a namespace in the Intermediary mappings to a namespace in the named mappings
+		 */
+		public MappingFactory makeDirectMapper() {
+			return (from, to) -> {
+				Map<String, String> methodKeys = new HashMap<>();
+				IMappingProvider direct = MappingTable.compose(MappingCache.read(getIntermediaryFiles()[0]), from, "intermediary", MappingCache.read(getNamedFiles()[0]), to, methodKeys);
+
+				//The named locals are keyed against Intermediary methods, so need moving over to the methods they are from now
+				Map<String, String[]> locals = new HashMap<>();
+				for (Entry<String, String[]> entry : makeLocals("intermediary", to).entrySet()) {
+					String method = methodKeys.get(entry.getKey());
+					if (method != null) locals.put(method, entry.getValue());
+				}
+
+				return withLocals(direct, locals);
+			};
+		}
+
+		/**
+		 * Makes only the local variable names {@link #makeNamedMapper()} would provide for the given projection, without any of the class or member names
+		 *
+		 * @param from The namespace to map from
+		 * @param to The namespace to map to
+		 *
+		 * @return The local variable names of each method, keyed as the remapper expects
+		 *
+		 * @throws IOException If an exception occurs reading the mappings
+		 */
+		protected Map<String, String[]> makeLocals(String from, String to) throws IOException {
+			return Collections.emptyMap(); //Plain Tiny mappings don't have any
+		}
+
 		public abstract JkDependency asDependency();
 
 
@@ -259,8 +330,6 @@ public class MappingResolver {
 	}
 
 	public static class TinyMappings extends MappingType {
-		private SoftReference<Mappings> interMappings, namedMappings;
-
 		TinyMappings(Path cache, Path mappings, JkVersionedModule version, String minecraft) {
 			super(cache, mappings, version, minecraft);
 		}
@@ -279,44 +348,28 @@ public class MappingResolver {
 			} catch (UncheckedIOException e) {
 				throw new UncheckedIOException("Error extracting mappings", e.getCause());
 			}
+
+			MappingCache.index(base);
 		}
 
 		@Override
 		public MappingFactory makeIntermediaryMapper() {
-			return (from, to) -> {
-				Mappings mappings = interMappings == null ? null : interMappings.get();
-
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeBase())) {
-						mappings = MappingsProvider.readTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					interMappings = new SoftReference<>(mappings);
-				}
+			return makeFactory(makeBase());
+		}
 
-				return makeProvider(mappings, from, to);
-			};
+		@Override
+		protected Path[] getIntermediaryFiles() {
+			return new Path[] {makeBase()};
 		}
 
 		@Override
 		public MappingFactory makeNamedMapper() {
-			return (from, to) -> {
-				Mappings mappings = namedMappings == null ? null : namedMappings.get();
-
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeNormal())) {
-						mappings = MappingsProvider.readTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					namedMappings = new SoftReference<>(mappings);
-				}
+			return makeFactory(makeNormal());
+		}
 
-				return makeProvider(mappings, from, to);
-			};
+		@Override
+		protected Path[] getNamedFiles() {
+			return new Path[] {makeNormal()};
 		}
 
 		@Override
@@ -326,9 +379,6 @@ public class MappingResolver {
 	}
 
 	public static class TinyV2Mappings extends MappingType {
-		private SoftReference<Mappings> interMappings;
-		private SoftReference<ExtendedMappings> namedMappings;
-
 		TinyV2Mappings(Path cache, Path mappings, JkVersionedModule version, String minecraft) {
 			super(cache, mappings, version, minecraft);
 		}
@@ -358,26 +408,19 @@ public class MappingResolver {
 				} catch (UncheckedIOException e) {
 					throw new UncheckedIOException("Error extracting mappings", e.getCause());
 				}
+
+				MappingCache.index(baseV2);
 			}
 		}
 
 		@Override
 		public MappingFactory makeIntermediaryMapper() {
-			return (from, to) -> {
-				Mappings mappings = interMappings == null ? null : interMappings.get();
-
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeV2Base())) {
-						mappings = MappingsProvider.readTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					interMappings = new SoftReference<>(mappings);
-				}
+			return makeFactory(makeV2Base());
+		}
 
-				return makeProvider(mappings, from, to);
-			};
+		@Override
+		protected Path[] getIntermediaryFiles() {
+			return new Path[] {makeV2Base()};
 		}
 
 		@Override
@@ -385,55 +428,57 @@ public class MappingResolver {
 			//No need for this given the V2 mappings ship with Stitch already applied
 		}
 
-		@Override
-		public MappingFactory makeNamedMapper() {
-			return (from, to) -> {
-				ExtendedMappings mappings = namedMappings == null ? null : namedMappings.get();
-
-				final ExtendedMappings usedMappings;
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeV2Base())) {
-						usedMappings = mappings = MappingsProvider.readFullTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					namedMappings = new SoftReference<>(mappings);
-				} else {
-					usedMappings = mappings;
+		/**
+		 * Copies the method parameter names out of the given mappings, so the (much larger) mappings don't need keeping around to provide them
+		 *
+		 * @param mappings The mappings to read the parameters from
+		 * @param from The namespace the parameters' methods are being mapped from
+		 * @param to The namespace to take the parameter names from
+		 *
+		 * @return The parameter names of each method, keyed as the remapper expects
+		 */
+		static Map<String, String[]> readLocals(ExtendedMappings mappings, String from, String to) {
+			Map<String, String[]> out = new HashMap<>();
+
+			for (MethodParameterEntry parameter : mappings.getMethodParameterEntries()) {
+				MethodParameter fromParam = parameter.get(from);
+				MethodParameter toParam = parameter.get(to);
+
+				String method = toParam.getMethod().getOwner() + '/' + fromParam.getMethod().getName() + fromParam.getMethod().getDesc();
+				int index = toParam.getLocalVariableIndex();
+
+				String[] locals = out.get(method);
+				if (locals == null) {
+					out.put(method, locals = new String[index + 1]);
+				} else if (locals.length <= index) {
+					out.put(method, locals = Arrays.copyOf(locals, index + 1));
 				}
+				locals[index] = toParam.getName();
+			}
 
-				return new IMappingProvider() {
-					private final IMappingProvider normal = makeProvider(usedMappings, from, to);
-
-					@Override
-					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
-						load(classMap, fieldMap, methodMap);
+			return out;
+		}
 
-						for (MethodParameterEntry parameter : usedMappings.getMethodParameterEntries()) {
-							MethodParameter fromParam = parameter.get(from);
-							MethodParameter toParam = parameter.get(to);
+		@Override
+		public MappingFactory makeNamedMapper() {
+			return (from, to) -> withLocals(makeProvider(makeV2Base(), from, to), makeLocals(from, to));
+		}
 
-							String method = toParam.getMethod().getOwner() + '/' + fromParam.getMethod().getName() + fromParam.getMethod().getDesc();
-							int index = toParam.getLocalVariableIndex();
-							String name = toParam.getName();
+		@Override
+		protected Map<String, String[]> makeLocals(String from, String to) throws IOException {
+			//The full mappings are only needed for the parameters, so are left to the mapping cache once they're copied out
+			return readLocals(MappingCache.readFull(makeV2Base()), from, to);
+		}
 
-							String[] locals = localMap.get(method);
-							if (locals == null) {
-								localMap.put(method, locals = new String[index + 1]);
-							} else if (locals.length <= index) {
-								localMap.put(method, locals = Arrays.copyOf(locals, index + 1));
-							}
-							locals[index] = name;
-						}
-					}
+		@Override
+		protected Path[] getNamedFiles() {
+			return new Path[] {makeV2Base()};
+		}
 
-					@Override
-					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
-						normal.load(classMap, fieldMap, methodMap);
-					}
-				};
-			};
+		@Override
+		public MappingFactory makeDirectMapper() {
+			//Every namespace is in the same file, so there is nothing to join and the named mapper can map from any of them directly
+			return makeNamedMapper();
 		}
 
 		@Override
@@ -444,100 +489,10 @@ public class MappingResolver {
 				Path base = makeV2Base(); //Strictly it doesn't need doing, but it's logical for it to have been done
 				if (Files.notExists(base)) throw new IllegalStateException("Need mappings extracting before creating dependency");
 
-				try (JkPathTree tree = JkPathTree.ofZip(jar)) {
-					JkUtilsPath.createDirectories(tree.createIfNotExist().get("mappings"));
-
-					try (Reader reader = new InputStreamReader(Files.newInputStream(base), StandardCharsets.UTF_8);
-							BufferedWriter writer = Files.newBufferedWriter(tree.getRoot().resolve("mappings/mappings.tiny"))) {
-						TinyV2Visitor.read(reader, new MappingsVisitor() {
-							@Override
-							public void visitVersion(int major, int minor) {
-								assert major == 2;
-							}
-
-
-							@Override
-							public void visitProperty(String name) {
-								// Don't need to catch escaped-names as the visitor will do it
-							}
-
-							@Override
-							public void visitProperty(String name, String value) {
-							}
-
-							@Override
-							public void visitNamespaces(String... namespaces) {
-								try {
-									writer.write("v1");
-									for (String namespace : namespaces) {
-										writer.write('\t');
-										writer.write(namespace);
-									}
-									writer.newLine();
-								} catch (IOException e) {
-									throw new UncheckedIOException("Error writing tiny header", e);
-								}
-							}
-
-							@Override
-							public ClassVisitor visitClass(long offset, String[] names) {
-								try {
-									writer.write("CLASS");
-									for (String name : names) {
-										writer.write('\t');
-										writer.write(name);
-									}
-									writer.newLine();
-								} catch (IOException e) {
-									throw new UncheckedIOException("Error writing tiny class", e);
-								}
-
-								return new ClassVisitor() {
-									@Override
-									public MethodVisitor visitMethod(long offset, String[] names, String descriptor) {
-										try {
-											writer.write("METHOD\t");
-											writer.write(descriptor);
-											for (String name : names) {
-												writer.write('\t');
-												writer.write(name);
-											}
-											writer.newLine();
-										} catch (IOException e) {
-											throw new UncheckedIOException("Error writing tiny method", e);
-										}
-
-										return null;
-									}
-
-									@Override
-									public FieldVisitor visitField(long offset, String[] names, String descriptor) {
-										try {
-											writer.write("FIELD\t");
-											writer.write(descriptor);
-											for (String name : names) {
-												writer.write('\t');
-												writer.write(name);
-											}
-											writer.newLine();
-										} catch (IOException e) {
-											throw new UncheckedIOException("Error writing tiny field", e);
-										}
-
-										return null;
-									}
-
-									@Override
-									public void visitComment(String line) {
-									}
-								};
-							}
-						});
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error writing mappings into jar", e);
-					}
-				} catch (UncheckedIOException e) {
-					throw new UncheckedIOException("Error packing mappings into jar", e.getCause());
+				try {
+					TinyV2Converter.toJar(base, jar);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error packing mappings into jar", e);
 				}
 			}, jar);
 		}
@@ -562,6 +517,8 @@ public class MappingResolver {
 			} catch (IOException e) {
 				throw new UncheckedIOException("Error extracting mappings", e);
 			}
+
+			MappingCache.index(base);
 		}
 
 		@Override
@@ -583,8 +540,6 @@ public class MappingResolver {
 	}
 
 	public static class EnigmaMappings extends MappingType {
-		private SoftReference<Mappings> interMappings, namedMappings;
-
 		EnigmaMappings(Path cache, Path mappings, JkVersionedModule version, String minecraft) {
 			super(cache, mappings, version, minecraft);
 		}
@@ -625,15 +580,15 @@ public class MappingResolver {
 				} catch (IOException e) {
 					throw new UncheckedIOException("Error downloading Intermediaries", e);
 				}
+
+				MappingCache.index(inters);
 			}
 
-			if (Files.notExists(base) || Files.notExists(params)) {
+			if (Files.notExists(base) || Files.notExists(params) || (!hasVersion() && missingOrOld(base, creationTime()))) {
 				try {
-					Files.deleteIfExists(base);
-					Files.deleteIfExists(params);
-
-					try (TinyWriter processor = new TinyParamWriter(base, params, "intermediary", "named")) {
-						MappingReaders.readEnigmaFrom(mappings, processor);
+					//Only the Enigma files which have changed since the last conversion need parsing again
+					if (EnigmaConverter.convert(mappings, base, params, "intermediary", "named")) {
+						Files.deleteIfExists(makeNormal()); //Made from the base mappings so will need remaking too
 					}
 				} catch (IOException e) {
 					throw new UncheckedIOException("Error processing Engima mappings", e);
@@ -647,57 +602,27 @@ public class MappingResolver {
 
 		@Override
 		public MappingFactory makeIntermediaryMapper() {
-			return (from, to) -> {
-				Mappings mappings = interMappings == null ? null : interMappings.get();
-
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeInters())) {
-						mappings = MappingsProvider.readTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					interMappings = new SoftReference<>(mappings);
-				}
+			return makeFactory(makeInters());
+		}
 
-				return makeProvider(mappings, from, to);
-			};
+		@Override
+		protected Path[] getIntermediaryFiles() {
+			return new Path[] {makeInters()};
 		}
 
 		@Override
 		public MappingFactory makeNamedMapper() {
-			return (from, to) -> {
-				Mappings mappings = namedMappings == null ? null : namedMappings.get();
-
-				final Mappings usedMappings;
-				if (mappings == null) {
-					try (InputStream in = Files.newInputStream(makeNormal())) {
-						usedMappings = mappings = MappingsProvider.readTinyMappings(in, false);
-					} catch (IOException e) {
-						throw new UncheckedIOException("Error reading mappings", e);
-					}
-
-					namedMappings = new SoftReference<>(mappings);
-				} else {
-					usedMappings = mappings;
-				}
-
-				return new IMappingProvider() {
-					private final IMappingProvider normal = makeProvider(usedMappings, from, to);
-					private final Map<String, String[]> locals = MappingReaders.readParamsFrom(makeParams());
+			return (from, to) -> withLocals(makeProvider(makeNormal(), from, to), makeLocals(from, to));
+		}
 
-					@Override
-					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
-						load(classMap, fieldMap, methodMap);
-						localMap.putAll(locals);
-					}
+		@Override
+		protected Map<String, String[]> makeLocals(String from, String to) throws IOException {
+			return MappingReaders.readParamsFrom(makeParams());
+		}
 
-					@Override
-					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
-						normal.load(classMap, fieldMap, methodMap);
-					}
-				};
-			};
+		@Override
+		protected Path[] getNamedFiles() {
+			return new Path[] {makeNormal(), makeParams()};
 		}
 
 		@Override
@@ -719,11 +644,12 @@ public class MappingResolver {
 	}
 
 	protected final MappingType type;
-	protected MappingFactory intermediaryMapper, namedMapper;
+	protected MappingFactory intermediaryMapper, namedMapper, directMapper;
+	protected String intermediaryHash, namedHash;
 
 	MappingResolver(Path cache, String minecraft, FullDependency yarn, boolean offline) {
-		JkResolveResult result = yarn.resolve().assertNoError();
-		List<Path> paths = result.getFiles().getEntries();
+		Resolution resolution = yarn.resolveAll();
+		List<Path> paths = resolution.getFiles();
 
 		Path origin;
 		switch (paths.size()) {
@@ -742,7 +668,7 @@ public class MappingResolver {
 		JkVersionedModule version;
 		if (yarn.isModule()) {
 			JkModuleId module = yarn.getModuleID();
-			version = module.withVersion(result.getVersionOf(module));
+			version = module.withVersion(resolution.getVersionOf(module));
 		} else {
 			version = JkVersionedModule.ofUnspecifiedVerion(JkModuleId.of("net.fabricmc.synthetic", MoreFiles.getNameWithoutExtension(origin)));
 		}
@@ -800,26 +726,101 @@ public class MappingResolver {
 		return path.toString();
 	}
 
+	/** Wraps the given factory so each projection is only made once, then shared between every remapper which asks for it */
+	private static MappingFactory memoise(MappingFactory factory) {
+		Map<String, IMappingProvider> providers = new HashMap<>();
+
+		return new MappingFactory() {
+			@Override
+			public IMappingProvider create(String from, String to) throws IOException {
+				String key = from + '\0' + to;
+
+				synchronized (providers) {
+					IMappingProvider provider = providers.get(key);
+
+					if (provider == null) {
+						providers.put(key, provider = factory.create(from, to));
+					}
+
+					return provider;
+				}
+			}
+
+			@Override
+			public IMappingProvider[] createAll(String[]... projections) throws IOException {
+				synchronized (providers) {
+					List<String[]> missing = new ArrayList<>(projections.length);
+
+					for (String[] projection : projections) {
+						if (!providers.containsKey(projection[0] + '\0' + projection[1])) missing.add(projection);
+					}
+
+					if (!missing.isEmpty()) {//Only make what hasn't been made already, but all in one go
+						IMappingProvider[] made = factory.createAll(missing.toArray(new String[0][]));
+
+						for (int i = 0; i < made.length; i++) {
+							providers.put(missing.get(i)[0] + '\0' + missing.get(i)[1], made[i]);
+						}
+					}
+
+					IMappingProvider[] out = new IMappingProvider[projections.length];
+					for (int i = 0; i < projections.length; i++) {
+						out[i] = providers.get(projections[i][0] + '\0' + projections[i][1]);
+					}
+					return out;
+				}
+			}
+		};
+	}
+
 	public MappingFactory getIntermediaries() {
 		if (intermediaryMapper == null) {
-			intermediaryMapper = type.makeIntermediaryMapper();
+			intermediaryMapper = memoise(type.makeIntermediaryMapper());
 		}
 
 		return intermediaryMapper;
 	}
 
+	public String getIntermediaryHash() {
+		if (intermediaryHash == null) {
+			intermediaryHash = type.hashIntermediaries();
+		}
+
+		return intermediaryHash;
+	}
+
 	protected void postMerge(Path mergedJar) {
 		type.enhanceMappings(mergedJar);
 	}
 
 	public MappingFactory getNamed() {
 		if (namedMapper == null) {
-			namedMapper = type.makeNamedMapper();
+			namedMapper = memoise(type.makeNamedMapper());
 		}
 
 		return namedMapper;
 	}
 
+	public String getNamedHash() {
+		if (namedHash == null) {
+			namedHash = type.hashNamed();
+		}
+
+		return namedHash;
+	}
+
+	public MappingFactory getDirect() {
+		if (directMapper == null) {
+			directMapper = memoise(type.makeDirectMapper());
+		}
+
+		return directMapper;
+	}
+
+	public String getDirectHash() {
+		return ArtifactCache.makeKey(getIntermediaryHash(), getNamedHash());
+	}
+
 	public JkDependency asDependency() {
 		return type.asDependency();
 	}
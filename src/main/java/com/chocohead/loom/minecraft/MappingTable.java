@@ -0,0 +1,230 @@
+package com.chocohead.loom.minecraft;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.MemberInstance;
+
+/** A flattened set of mappings between two namespaces, with the remapper's keys made up front so it is cheap to load repeatedly */
+final class MappingTable implements IMappingProvider {
+	static final class Builder {
+		//Plenty of names repeat between members (overridden methods especially), so only keep one copy of each
+		private final Map<String, String> pool = new HashMap<>();
+		private final Pairs classes, fields, methods;
+
+		Builder(int classes, int fields, int methods) {
+			this.classes = new Pairs(classes);
+			this.fields = new Pairs(fields);
+			this.methods = new Pairs(methods);
+		}
+
+		private String pool(String name) {
+			String pooled = pool.putIfAbsent(name, name);
+			return pooled != null ? pooled : name;
+		}
+
+		void addClass(String fromName, String toName) {
+			classes.add(fromName, pool(toName));
+		}
+
+		void addField(String owner, String name, String desc, String toName) {
+			fields.add(owner + '/' + MemberInstance.getFieldId(name, desc), pool(toName));
+		}
+
+		void addMethod(String owner, String name, String desc, String toName) {
+			methods.add(owner + '/' + MemberInstance.getMethodId(name, desc), pool(toName));
+		}
+
+		MappingTable build() {
+			return new MappingTable(classes.build(), fields.build(), methods.build());
+		}
+	}
+
+	private static final class Pairs {
+		private String[] pairs;
+		private int size;
+
+		Pairs(int expected) {
+			pairs = new String[expected * 2];
+		}
+
+		void add(String key, String value) {
+			assert key != null && value != null;
+			assert size + 2 <= pairs.length;
+
+			pairs[size++] = key;
+			pairs[size++] = value;
+		}
+
+		String[] build() {
+			if (size == pairs.length) return pairs;
+
+			String[] out = new String[size];
+			System.arraycopy(pairs, 0, out, 0, size);
+			return out;
+		}
+	}
+
+	/** Pairs of the key followed by the name it maps to */
+	private final String[] classes, fields, methods;
+
+	private MappingTable(String[] classes, String[] fields, String[] methods) {
+		this.classes = classes;
+		this.fields = fields;
+		this.methods = methods;
+	}
+
+	static MappingTable of(Mappings mappings, String from, String to) {
+		return of(mappings, new String[][] {{from, to}})[0];
+	}
+
+	/**
+	 * Makes a table for each of the given projections, in a single pass over the mappings
+	 *
+	 * @param mappings The mappings to make the tables from
+	 * @param projections Pairs of namespaces, each being the namespace to map from followed by the namespace to map to
+	 *
+	 * @return A table for each projection, in the same order as given
+	 */
+	static MappingTable[] of(Mappings mappings, String[]... projections) {
+		int count = projections.length;
+		String[] from = new String[count];
+		String[] to = new String[count];
+		Builder[] builders = new Builder[count];
+
+		for (int i = 0; i < count; i++) {
+			from[i] = projections[i][0];
+			to[i] = projections[i][1];
+
+			if (!mappings.getNamespaces().contains(from[i])) {
+				throw new IllegalArgumentException("Cannot find namespace \"" + from[i] + "\" in mappings");
+			}
+			if (!mappings.getNamespaces().contains(to[i])) {
+				throw new IllegalArgumentException("Cannot find namespace \"" + to[i] + "\" in mappings");
+			}
+
+			builders[i] = new Builder(mappings.getClassEntries().size(), mappings.getFieldEntries().size(), mappings.getMethodEntries().size());
+		}
+
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			for (int i = 0; i < count; i++) {
+				String fromName = entry.get(from[i]);
+				if (fromName == null) continue;
+				builders[i].addClass(fromName, entry.get(to[i]));
+			}
+		}
+
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			for (int i = 0; i < count; i++) {
+				EntryTriple fromTriple = entry.get(from[i]);
+				if (fromTriple == null) continue;
+				builders[i].addField(fromTriple.getOwner(), fromTriple.getName(), fromTriple.getDesc(), entry.get(to[i]).getName());
+			}
+		}
+
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			for (int i = 0; i < count; i++) {
+				EntryTriple fromTriple = entry.get(from[i]);
+				if (fromTriple == null) continue;
+				builders[i].addMethod(fromTriple.getOwner(), fromTriple.getName(), fromTriple.getDesc(), entry.get(to[i]).getName());
+			}
+		}
+
+		MappingTable[] tables = new MappingTable[count];
+		for (int i = 0; i < count; i++) {
+			tables[i] = builders[i].build();
+		}
+		return tables;
+	}
+
+	private static String memberKey(EntryTriple triple) {
+		return triple.getOwner() + '\0' + triple.getName() + '\0' + triple.getDesc();
+	}
+
+	/**
+	 * Makes a table mapping straight from {@code from} to {@code to}, joining two sets of mappings which share the {@code via} namespace
+	 *
+	 * <p>Only entries in the first mappings are included, anything only in the second mappings will have no name in {@code from}</p>
+	 *
+	 * @param first The mappings with both the {@code from} and {@code via} namespaces
+	 * @param from The namespace to map from
+	 * @param via The namespace shared between both sets of mappings
+	 * @param second The mappings with both the {@code via} and {@code to} namespaces
+	 * @param to The namespace to map to
+	 * @param methodKeys Filled with the remapper's local variable keys for each method in {@code via}, pointing to the same method's key in {@code from}
+	 *
+	 * @return A table mapping from {@code from} to {@code to}
+	 */
+	static MappingTable compose(Mappings first, String from, String via, Mappings second, String to, Map<String, String> methodKeys) {
+		Map<String, String> classes = new HashMap<>();
+		for (ClassEntry entry : second.getClassEntries()) {
+			String viaName = entry.get(via);
+			if (viaName != null) classes.put(viaName, entry.get(to));
+		}
+
+		Map<String, String> fields = new HashMap<>();
+		for (FieldEntry entry : second.getFieldEntries()) {
+			EntryTriple viaTriple = entry.get(via);
+			if (viaTriple != null) fields.put(memberKey(viaTriple), entry.get(to).getName());
+		}
+
+		Map<String, String> methods = new HashMap<>();
+		for (MethodEntry entry : second.getMethodEntries()) {
+			EntryTriple viaTriple = entry.get(via);
+			if (viaTriple != null) methods.put(memberKey(viaTriple), entry.get(to).getName());
+		}
+
+		Builder builder = new Builder(first.getClassEntries().size(), first.getFieldEntries().size(), first.getMethodEntries().size());
+
+		for (ClassEntry entry : first.getClassEntries()) {
+			String fromName = entry.get(from);
+			if (fromName == null) continue;
+
+			String viaName = entry.get(via);
+			builder.addClass(fromName, classes.getOrDefault(viaName, viaName));
+		}
+
+		for (FieldEntry entry : first.getFieldEntries()) {
+			EntryTriple fromTriple = entry.get(from);
+			if (fromTriple == null) continue;
+
+			EntryTriple viaTriple = entry.get(via);
+			builder.addField(fromTriple.getOwner(), fromTriple.getName(), fromTriple.getDesc(), fields.getOrDefault(memberKey(viaTriple), viaTriple.getName()));
+		}
+
+		for (MethodEntry entry : first.getMethodEntries()) {
+			EntryTriple fromTriple = entry.get(from);
+			if (fromTriple == null) continue;
+
+			EntryTriple viaTriple = entry.get(via);
+			builder.addMethod(fromTriple.getOwner(), fromTriple.getName(), fromTriple.getDesc(), methods.getOrDefault(memberKey(viaTriple), viaTriple.getName()));
+
+			//Locals are keyed by the class's new name, but the method's old name and descriptor
+			String owner = classes.getOrDefault(viaTriple.getOwner(), viaTriple.getOwner());
+			methodKeys.put(owner + '/' + viaTriple.getName() + viaTriple.getDesc(), owner + '/' + fromTriple.getName() + fromTriple.getDesc());
+		}
+
+		return builder.build();
+	}
+
+	@Override
+	public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+		for (int i = 0; i < classes.length; i += 2) {
+			classMap.put(classes[i], classes[i + 1]);
+		}
+
+		for (int i = 0; i < fields.length; i += 2) {
+			fieldMap.put(fields[i], fields[i + 1]);
+		}
+
+		for (int i = 0; i < methods.length; i += 2) {
+			methodMap.put(methods[i], methods[i + 1]);
+		}
+	}
+}
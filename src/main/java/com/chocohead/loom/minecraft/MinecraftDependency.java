@@ -1,10 +1,8 @@
 package com.chocohead.loom.minecraft;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.function.Supplier;
@@ -37,7 +35,8 @@ public class MinecraftDependency {
 		FullDependency mappingDependency;
 		MappingType mappings;
 		Supplier<Path> remapCache;
-		boolean splitMerge, offline;
+		RemapStore remapStore;
+		boolean splitMerge, concurrent, direct, offline;
 
 		public Builder(Path cache, VersionFactory versionMaker) {
 			this.cache = cache;
@@ -69,18 +68,34 @@ public class MinecraftDependency {
 			return this;
 		}
 
+		public Builder withSharedRemapStore(RemapStore store) {
+			remapStore = store;
+			return this;
+		}
+
 		public Builder splitMerge(boolean remapFirst) {
 			splitMerge = remapFirst;
 			return this;
 		}
 
+		public Builder concurrentSetup(boolean concurrent) {
+			this.concurrent = concurrent;
+			return this;
+		}
+
+		public Builder directRemap(boolean direct) {
+			this.direct = direct;
+			return this;
+		}
+
 		public Builder runOffline(boolean offline) {
 			this.offline = offline;
 			return this;
 		}
 
 		public Builder accept(JkPluginLoom loom) {
-			return withRemapCache(loom::remapCache).runOffline(loom.runOffline);
+			return withRemapCache(loom::remapCache).withSharedRemapStore(loom.shareRemappedMods ? loom.sharedRemapStore() : null)
+					.concurrentSetup(loom.concurrentSetup).directRemap(loom.directRemap).runOffline(loom.runOffline);
 		}
 
 		public MinecraftDependency build() {
@@ -94,13 +109,12 @@ public class MinecraftDependency {
 
 	private static final String FULL_MANIFEST = "version_manifest.json";
 	private static final String VERSION_MANIFEST = "minecraft-%s-info.json";
+	private static final String MOD_CLASSPATH_INDEX = "mod-classpath-index.jar";
 
 	public static Builder standard(Path cache, String version) {
 		return new Builder(cache, runOffline -> {
 			try {
-				MinecraftVersions versions = MinecraftVersions.get(cache.resolve(FULL_MANIFEST), runOffline);
-
-				Version mcVersion = versions.getVersion(version);
+				Version mcVersion = MinecraftVersions.find(cache.resolve(FULL_MANIFEST), version, runOffline);
 				if (mcVersion == null) {
 					throw new IllegalArgumentException("Failed to find Minecraft version: " + version);
 				}
@@ -118,9 +132,7 @@ public class MinecraftDependency {
 			try {
 				DownloadUtil.downloadIfChanged(manifest, manifestPath);
 
-				try (Reader reader = Files.newBufferedReader(manifestPath)) {
-					return MinecraftVersions.GSON.fromJson(reader, MinecraftVersion.class);
-				}
+				return VersionReader.read(manifestPath);
 			} catch (IOException e) {
 				throw new UncheckedIOException("Error resolving Minecraft version: " + version, e);
 			}
@@ -129,8 +141,8 @@ public class MinecraftDependency {
 
 	public static Builder fromManifest(Path cache, Path manifest) {
 		return new Builder(cache, offline -> {
-			try (Reader reader = Files.newBufferedReader(manifest)) {
-				return MinecraftVersions.GSON.fromJson(reader, MinecraftVersion.class);
+			try {
+				return VersionReader.read(manifest);
 			} catch (IOException e) {
 				throw new UncheckedIOException("Error resolving Minecraft version at: " + manifest, e);
 			}
@@ -140,6 +152,8 @@ public class MinecraftDependency {
 	private final MinecraftResolver resolver;
 	private final MappingResolver mappings;
 	private final Supplier<Path> remapCache;
+	private final RemapStore remapStore;
+	private Path modClasspath;
 
 	public MinecraftDependency(MinecraftVersion version, Builder settings) {
 		JkLog.startTask("Preparing Minecraft dependencies");
@@ -147,7 +161,7 @@ public class MinecraftDependency {
 		SpecialCases.enhanceVersion(version);
 
 		JkLog.startTask("Fetching Minecraft jars");
-		resolver = new MinecraftResolver(settings.cache.resolve(version.id), version, settings.splitMerge, settings.offline);
+		resolver = new MinecraftResolver(settings.cache.resolve(version.id), version, settings.splitMerge, settings.concurrent, settings.offline);
 		JkLog.endTask();
 
 		JkLog.startTask("Resolving mappings");
@@ -158,8 +172,11 @@ public class MinecraftDependency {
 		}
 		JkLog.endTask();
 
+		//Split merging makes an Intermediary merged jar, so there's nothing to skip by going straight to named
+		boolean direct = settings.direct && !settings.splitMerge;
+
 		JkLog.startTask("Merging Minecraft jars");
-		resolver.makeIntermediary(mappings.getIntermediaries());
+		resolver.makeIntermediary(mappings.getIntermediaries(), mappings.getIntermediaryHash(), direct);
 		JkLog.endTask();
 
 		JkLog.startTask("Preparing mappings");
@@ -167,10 +184,16 @@ public class MinecraftDependency {
 		JkLog.endTask();
 
 		JkLog.startTask("Remapping Minecraft jar");
-		resolver.makeMapped(mappings.getMappingName(), mappings.getNamed());
+		if (direct) {
+			resolver.makeMappedDirectly(mappings.getMappingName(), mappings.getDirect(), mappings.getDirectHash());
+		} else {
+			resolver.makeMapped(mappings.getMappingName(), mappings.getNamed(), mappings.getNamedHash());
+		}
 		JkLog.endTask();
+		JkLog.trace("Mapping cache " + MappingCache.getStats());
 
 		remapCache = settings.remapCache;
+		remapStore = settings.remapStore;
 		JkLog.endTask();
 	}
 
@@ -204,17 +227,26 @@ public class MinecraftDependency {
 		return cache;
 	}
 
-	public RemappedSystem remapper() {
-		List<Path> libraries = resolver.getLibraries().withScopes(JkJavaDepScopes.SCOPES_FOR_COMPILATION).resolveToPaths();
+	/** Gets the classpath mods need when remapping, as a single {@link ClasspathIndex} only made once for every remapper */
+	private synchronized Path getModClasspath() throws IOException {
+		if (modClasspath == null) {
+			List<Path> libraries = resolver.getLibraryPaths();
 
-		Path[] classpath = new Path[libraries.size() + 1];
-		libraries.toArray(classpath);
-		classpath[libraries.size()] = resolver.getIntermediary();
+			Path[] classpath = new Path[libraries.size() + 1];
+			libraries.toArray(classpath);
+			classpath[libraries.size()] = resolver.getIntermediary();
 
+			modClasspath = ClasspathIndex.of(resolver.cache.resolve(MOD_CLASSPATH_INDEX), classpath);
+		}
+
+		return modClasspath;
+	}
+
+	public RemappedSystem remapper() {
 		try {
-			return new RemappedSystem(remapCache(), classpath).withMappings(mappings.getNamed(), "intermediary", "named");
+			return new RemappedSystem(remapCache(), getModClasspath()).withMappings(mappings.getNamed(), "intermediary", "named", mappings.getNamedHash()).withSharedStore(remapStore);
 		} catch (IOException e) {
-			throw new UncheckedIOException("Error getting Intermediary -> Named mappings", e);
+			throw new UncheckedIOException("Error preparing Intermediary -> Named remapping", e);
 		}
 	}
 }
\ No newline at end of file
@@ -1,10 +1,22 @@
 package com.chocohead.loom.minecraft;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Throwables;
 
 import dev.jeka.core.api.depmanagement.JkDependencySet;
 import dev.jeka.core.api.depmanagement.JkJavaDepScopes;
@@ -26,9 +38,10 @@ import net.fabricmc.tinyremapper.TinyRemapper;
 
 import com.chocohead.loom.FullDependencies;
 import com.chocohead.loom.minecraft.MappingResolver.MappingFactory;
+import com.chocohead.loom.minecraft.MinecraftVersion.Download;
 import com.chocohead.loom.minecraft.MinecraftVersion.Library;
+import com.chocohead.loom.util.ArtifactCache;
 import com.chocohead.loom.util.DownloadUtil;
-import com.chocohead.loom.util.FileUtils;
 
 public class MinecraftResolver {
 	private static final String CLIENT_JAR = "client.jar";
@@ -38,19 +51,35 @@ public class MinecraftResolver {
 	private static final String SERVER_INTER_JAR = "server-intermediary.jar";
 	private static final String MERGED_INTER_JAR = "merged-intermediary.jar";
 	private static final String MAPPED_JAR = "merged-%s.jar";
+	private static final String CLASSPATH_INDEX = "libraries-index.jar";
+	private static final String LIBRARY_PATHS = "libraries.paths";
+	/** Settings which change the output of merging or remapping, included in the inputs of each produced jar */
+	private static final String MERGE_OPTIONS = "syntheticParamsOffset", REMAP_OPTIONS = "renameInvalidLocals+rebuildSourceFilenames";
 
 	protected final MinecraftVersion version;
 	protected final FullDependencies libraries;
-	protected final boolean split;
+	/** The key of everything which goes into resolving {@link #libraries}, so the resolved paths can be reused until they would change */
+	protected String librariesKey;
+	private List<Path> libraryPaths;
+	protected final boolean split, concurrent;
 
 	protected final Path cache;
 	protected final Path clientJar, serverJar, mergedJar;
 	protected Path intermediaryJar, mappedJar;
+	protected String intermediaryKey;
+	/** The mappings to make {@link #intermediaryJar} with, if it has been left until it is needed */
+	private MappingFactory intermediaryMappings;
+	private Path[] remapClasspath;
 
 	public MinecraftResolver(Path cache, MinecraftVersion version, boolean split, boolean offline) {
+		this(cache, version, split, false, offline);
+	}
+
+	public MinecraftResolver(Path cache, MinecraftVersion version, boolean split, boolean concurrent, boolean offline) {
 		this.version = version;
 		this.cache = cache;
 		this.split = split;
+		this.concurrent = concurrent;
 
 		JkUtilsPath.createDirectories(cache);
 		clientJar = cache.resolve(CLIENT_JAR);
@@ -67,23 +96,63 @@ public class MinecraftResolver {
 				throw new JkException("Missing jar(s); Client: " + Files.exists(clientJar) + ", Server: " + Files.exists(serverJar));
 			}
 		} else {
-			downloadIfNeeded("client", clientJar);
-			downloadIfNeeded("server", serverJar);
+			JkLog.trace("Checking Minecraft " + version.id + " jars");
+
+			try {
+				DownloadUtil.downloadAll(Arrays.asList(makeRequest("client", clientJar), makeRequest("server", serverJar)), concurrent ? 2 : 1, false);
+			} catch (IOException e) {
+				//Shouldn't need to delete the jars here, DownloadUtil only replaces them once the download is verified
+				throw new RuntimeException("Unexpected error downloading Minecraft jars", e);
+			}
 		}
 
 		libraries = resolveLibraries();
 		libraries.setModuleHolder(JkVersionedModule.of(JkModuleId.of("com.mojang", "minecraft"), JkVersion.of(version.id)));
 	}
 
-	private void downloadIfNeeded(String jarName, Path jar) {
-		if (Files.notExists(jar) || !FileUtils.matchesSHA1(jar, version.downloads.get(jarName).hash)) {
+	private DownloadUtil.Request makeRequest(String jarName, Path jar) {
+		Download download = version.downloads.get(jarName);
+		return new DownloadUtil.Request(download.url, jar, download.hash, download.size);
+	}
+
+	/** Runs both tasks, with the second on its own thread if {@link #concurrent} is set, or one after the other if not */
+	protected void inParallel(Runnable first, Runnable second) {
+		if (!concurrent) {
+			first.run();
+			second.run();
+			return;
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> task = executor.submit(second);
+
+			Throwable failure = null;
 			try {
-				JkLog.trace("Downloading Minecraft " + version.id + ' ' + jarName + " jar");
-				DownloadUtil.downloadIfChanged(version.downloads.get(jarName).url, jar);
-			} catch (IOException e) {
-				//Shouldn't need to delete the jar here, DownloadUtil will do it if it reached that stage
-				throw new RuntimeException("Unexpected error downloading " + jarName + " jar", e);
+				first.run();
+			} catch (Throwable t) {
+				failure = t;
+			}
+
+			try {
+				task.get(); //Always wait for the other task, it's probably writing something we don't want half finished
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				} else {
+					failure.addSuppressed(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null) failure = new JkException("Interrupted waiting for parallel task");
 			}
+
+			if (failure != null) {
+				Throwables.throwIfUnchecked(failure);
+				throw new RuntimeException(failure);
+			}
+		} finally {
+			executor.shutdown();
 		}
 	}
 
@@ -93,6 +162,9 @@ public class MinecraftResolver {
 		JkScopeMapping normalMapping = JkScopeMapping.of(JkJavaDepScopes.PROVIDED, JkJavaDepScopes.RUNTIME).to("default(*)");
 		JkScopeMapping nativeMapping = JkScopeMapping.of(JkJavaDepScopes.RUNTIME).to("default(*)");
 
+		List<Object> keyInputs = new ArrayList<>();
+		keyInputs.add(version.id);
+
 		for (Library library : version.libraries) {
 			if (!library.shouldUse()) continue;
 
@@ -101,6 +173,7 @@ public class MinecraftResolver {
 				//Ivy doesn't seem to like LWJGL's xml, so it needs a little help to resolve properly
 				if (library.name.contains("lwjgl")) dependency = dependency.withScopeMapping(normalMapping);
 				dependencies.add(dependency);
+				keyInputs.add(library.name);
 			}
 
 			if (library.hasNativeFor(os)) {
@@ -109,11 +182,56 @@ public class MinecraftResolver {
 				//The LWJGL natives also suffer from the same problem
 				if (library.name.contains("lwjgl")) dependency = dependency.withScopeMapping(nativeMapping);
 				dependencies.add(dependency);
+				keyInputs.add(library.name + ':' + library.natives.get(os));
 			}
 		}
 
 		//Could check all the libraries start with the same repo URL?
-		return FullDependencies.of(JkDependencySet.of(dependencies), JkRepoSet.of("https://libraries.minecraft.net").and(JkRepoSet.of(JkRepo.ofMavenCentral(), JkRepo.ofMavenJCenter())), JkJavaDepScopes.SCOPES_FOR_COMPILATION);
+		FullDependencies libraries = FullDependencies.of(JkDependencySet.of(dependencies), JkRepoSet.of("https://libraries.minecraft.net").and(JkRepoSet.of(JkRepo.ofMavenCentral(), JkRepo.ofMavenJCenter())), JkJavaDepScopes.SCOPES_FOR_COMPILATION);
+		//Spelt out as the repo set's toString isn't something to rely on staying the same
+		libraries.getRepos().getRepoList().stream().map(JkRepo::getUrl).forEach(keyInputs::add);
+		keyInputs.add(Arrays.toString(JkJavaDepScopes.SCOPES_FOR_COMPILATION));
+		librariesKey = ArtifactCache.makeKey(keyInputs.toArray());
+
+		return libraries;
+	}
+
+	/**
+	 * Gets the files making up the libraries for compilation, only resolving them with Ivy if they weren't resolved for the same libraries before
+	 * (or some of the files which were resolved have since disappeared)
+	 *
+	 * @return The resolved library files
+	 */
+	public synchronized List<Path> getLibraryPaths() {
+		if (libraryPaths == null) {
+			Path pathsFile = cache.resolve(LIBRARY_PATHS);
+
+			try {
+				if (librariesKey != null && ArtifactCache.isValid(pathsFile, librariesKey)) {
+					List<Path> paths = Files.readAllLines(pathsFile, StandardCharsets.UTF_8).stream().map(Paths::get).collect(Collectors.toList());
+
+					if (paths.stream().allMatch(Files::exists)) {
+						JkLog.trace("Using previously resolved libraries for Minecraft " + version.id);
+						return libraryPaths = Collections.unmodifiableList(paths);
+					}
+
+					JkLog.trace("Previously resolved libraries missing, resolving again");
+					Files.delete(pathsFile);
+				}
+
+				List<Path> paths = libraries.resolveToPaths();
+				if (librariesKey != null) {
+					ArtifactCache.makeIfInvalid(pathsFile, librariesKey, output -> {
+						Files.write(output, paths.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.toList()), StandardCharsets.UTF_8);
+					});
+				}
+				libraryPaths = Collections.unmodifiableList(paths);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error caching resolved libraries", e);
+			}
+		}
+
+		return libraryPaths;
 	}
 
 	public Path getClient() {
@@ -132,69 +250,208 @@ public class MinecraftResolver {
 		return mergedJar;
 	}
 
-	protected void makeIntermediary(MappingFactory mappings) {
+	private String getJarKey(String jarName) {
+		Download download = version.downloads.get(jarName);
+		//Not every jar comes with a known hash, but the URL is as specific as the hash would be in that case
+		return download.hash != null ? download.hash : download.url.toString();
+	}
+
+	protected void makeIntermediary(MappingFactory mappings, String mappingHash) {
+		makeIntermediary(mappings, mappingHash, false);
+	}
+
+	/**
+	 * Prepares the merged Intermediary jar, optionally leaving it to be made only once something asks for it
+	 *
+	 * @param mappings The factory for the official/client/server to Intermediary mappings
+	 * @param mappingHash The hash of the files the mappings are read from
+	 * @param lazily Whether to avoid remapping the merged jar until {@link #getIntermediary()} is called, if it isn't made as part of merging
+	 */
+	protected void makeIntermediary(MappingFactory mappings, String mappingHash, boolean lazily) {
 		if (split) {
 			Path clientRemapped = cache.resolve(CLIENT_INTER_JAR);
-			remapIfMissing(clientJar, clientRemapped, mappings, "client", "intermediary");
-
+			String clientKey = ArtifactCache.makeKey(getJarKey("client"), mappingHash, "client", "intermediary", REMAP_OPTIONS);
 			Path serverRemapped = cache.resolve(SERVER_INTER_JAR);
-			remapIfMissing(serverJar, serverRemapped, mappings, "server", "intermediary");
+			String serverKey = ArtifactCache.makeKey(getJarKey("server"), mappingHash, "server", "intermediary", REMAP_OPTIONS);
 
-			if (Files.notExists(mergedJar)) {
-				try (JarMerger jarMerger = new JarMerger(clientRemapped.toFile(), serverRemapped.toFile(), mergedJar.toFile())) {
-					jarMerger.enableSyntheticParamsOffset();
-					jarMerger.merge();
+			if (!ArtifactCache.isValid(clientRemapped, clientKey) || !ArtifactCache.isValid(serverRemapped, serverKey)) {
+				//Resolve the libraries up front rather than having both threads race Ivy to do it
+				Path[] classpath = getRemapClasspath();
+				try {//Both sides come from the same mappings, so make them together rather than walking the mappings twice
+					mappings.createAll(new String[] {"client", "intermediary"}, new String[] {"server", "intermediary"});
 				} catch (IOException e) {
-					FileUtils.deleteAfterCrash(mergedJar, e);
-					throw new RuntimeException("Error merging client and server jars", e);
+					throw new UncheckedIOException("Error reading Intermediary mappings", e);
 				}
+
+				inParallel(() -> remapIfInvalid(clientJar, clientRemapped, clientKey, classpath, mappings, "client", "intermediary"),
+						() -> remapIfInvalid(serverJar, serverRemapped, serverKey, classpath, mappings, "server", "intermediary"));
 			}
+
+			mergeIfInvalid(clientRemapped, serverRemapped, intermediaryKey = ArtifactCache.makeKey(clientKey, serverKey, MERGE_OPTIONS));
 		} else {
-			if (Files.notExists(mergedJar)) {//Primitive APIs needing Files rather than Paths
-				try (JarMerger jarMerger = new JarMerger(clientJar.toFile(), serverJar.toFile(), mergedJar.toFile())) {
+			String mergedKey = ArtifactCache.makeKey(getJarKey("client"), getJarKey("server"), MERGE_OPTIONS);
+			intermediaryKey = ArtifactCache.makeKey(mergedKey, mappingHash, "official", "intermediary", REMAP_OPTIONS);
+			intermediaryJar = cache.resolve(MERGED_INTER_JAR);
+
+			if (lazily) {
+				mergeIfInvalid(clientJar, serverJar, mergedKey);
+				intermediaryMappings = mappings;
+			} else if (concurrent && !ArtifactCache.isValid(intermediaryJar, intermediaryKey)) {
+				mergeThenRemap(mergedKey, intermediaryJar, intermediaryKey, mappings, "official", "intermediary");
+			} else {
+				mergeIfInvalid(clientJar, serverJar, mergedKey);
+				remapIfInvalid(mergedJar, intermediaryJar, intermediaryKey, mappings, "official", "intermediary");
+			}
+		}
+	}
+
+	private void mergeIfInvalid(Path client, Path server, String key) {
+		try {
+			ArtifactCache.makeIfInvalid(mergedJar, key, output -> {
+				try (JarMerger jarMerger = new JarMerger(client.toFile(), server.toFile(), output.toFile())) {//Primitive APIs needing Files rather than Paths
 					jarMerger.enableSyntheticParamsOffset();
 					jarMerger.merge();
-				} catch (IOException e) {
-					FileUtils.deleteAfterCrash(mergedJar, e);
-					throw new RuntimeException("Error merging client and server jars", e);
 				}
-			}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("Error merging client and server jars", e);
+		}
+	}
 
-			remapIfMissing(mergedJar, intermediaryJar = cache.resolve(MERGED_INTER_JAR), mappings, "official", "intermediary");
+	/** Gets the libraries remapping needs on the classpath, as a single {@link ClasspathIndex} shared by every remapper */
+	private synchronized Path[] getRemapClasspath() {
+		if (remapClasspath == null) {
+			try {
+				remapClasspath = new Path[] {ClasspathIndex.of(cache.resolve(CLASSPATH_INDEX), getLibraryPaths().toArray(new Path[0]))};
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error indexing remapping classpath", e);
+			}
 		}
+
+		return remapClasspath;
 	}
 
-	private void remapIfMissing(Path jar, Path output, MappingFactory mappings, String from, String to) {
-		if (Files.exists(output)) return; //Nothing to do (probably)
+	private void remapIfInvalid(Path jar, Path output, String key, MappingFactory mappings, String from, String to) {
+		if (ArtifactCache.isValid(output, key)) return; //Nothing to do
 
-		try {
-			TinyRemapper remapper = TinyRemapper.newRemapper()
-					.withMappings(mappings.create(from, to))
-					.renameInvalidLocals(true)
-					.rebuildSourceFilenames(true)
-					.build();
-
-			try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
-				outputConsumer.addNonClassFiles(jar);
-				remapper.readClassPath(libraries.withScopes(JkJavaDepScopes.SCOPES_FOR_COMPILATION).resolveToPaths().toArray(new Path[0]));
-				remapper.readInputs(jar);
-
-				remapper.apply(outputConsumer);
-			}
+		remapIfInvalid(jar, output, key, getRemapClasspath(), mappings, from, to);
+	}
+
+	private void remapIfInvalid(Path jar, Path output, String key, Path[] classpath, MappingFactory mappings, String from, String to) {
+		remapIfInvalid(jar, output, key, () -> makeRemapper(classpath, mappings, from, to));
+	}
+
+	/** An {@link IOException} throwing {@link java.util.function.Supplier Supplier}{@code <}TinyRemapper{@code >} */
+	private interface RemapperMaker {
+		TinyRemapper make() throws IOException;
+	}
+
+	private static TinyRemapper makeRemapper(Path[] classpath, MappingFactory mappings, String from, String to) throws IOException {
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings(mappings.create(from, to))
+				.renameInvalidLocals(true)
+				.rebuildSourceFilenames(true)
+				.build();
 
+		try {
+			remapper.readClassPath(classpath);
+		} catch (Throwable t) {
 			remapper.finish();
+			throw t;
+		}
+
+		return remapper;
+	}
+
+	private void remapIfInvalid(Path jar, Path output, String key, RemapperMaker remapperMaker) {
+		try {
+			ArtifactCache.makeIfInvalid(output, key, temp -> {
+				TinyRemapper remapper = remapperMaker.make();
+
+				try (OutputConsumerPath outputConsumer = new OutputConsumerPath(temp)) {
+					outputConsumer.addNonClassFiles(jar);
+					remapper.readInputs(jar);
+
+					remapper.apply(outputConsumer);
+				} finally {
+					remapper.finish();
+				}
+			});
 		} catch (IOException e) {
-			FileUtils.deleteAfterCrash(output, e);
 			throw new RuntimeException("Failed to remap jar", e);
 		}
 	}
 
-	public Path getIntermediary() {
-		return split ? mergedJar : intermediaryJar;
+	/** Merges the client and server jars whilst the remapper for the merged jar reads its mappings and classpath in on another thread */
+	private void mergeThenRemap(String mergedKey, Path output, String key, MappingFactory mappings, String from, String to) {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<TinyRemapper> pending = executor.submit(() -> makeRemapper(getRemapClasspath(), mappings, from, to));
+			boolean[] used = {false};
+
+			try {
+				mergeIfInvalid(clientJar, serverJar, mergedKey);
+
+				remapIfInvalid(mergedJar, output, key, () -> {
+					used[0] = true;
+					return awaitRemapper(pending);
+				});
+			} finally {
+				if (!used[0]) {//Either something went wrong or another process made the output first, either way the remapper needs finishing
+					try {
+						awaitRemapper(pending).finish();
+					} catch (IOException | RuntimeException e) {
+						JkLog.trace("Unused remapper failed to build: " + e);
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static TinyRemapper awaitRemapper(Future<TinyRemapper> pending) throws IOException {
+		try {
+			return pending.get();
+		} catch (ExecutionException e) {
+			Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException("Error preparing remapper", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JkException("Interrupted waiting for remapper");
+		}
+	}
+
+	public synchronized Path getIntermediary() {
+		if (split) return mergedJar;
+
+		if (intermediaryMappings != null) {//Only made once it is actually wanted
+			remapIfInvalid(mergedJar, intermediaryJar, intermediaryKey, intermediaryMappings, "official", "intermediary");
+			intermediaryMappings = null;
+		}
+
+		return intermediaryJar;
+	}
+
+	protected void makeMapped(String mappingName, MappingFactory mappings, String mappingHash) {
+		String key = ArtifactCache.makeKey(intermediaryKey, mappingHash, "intermediary", "named", REMAP_OPTIONS);
+		remapIfInvalid(getIntermediary(), mappedJar = cache.resolve(String.format(MAPPED_JAR, mappingName)), key, mappings, "intermediary", "named");
 	}
 
-	protected void makeMapped(String mappingName, MappingFactory mappings) {
-		remapIfMissing(getIntermediary(), mappedJar = cache.resolve(String.format(MAPPED_JAR, mappingName)), mappings, "intermediary", "named");
+	/**
+	 * Remaps the merged jar straight from official to named, without needing an Intermediary jar in between
+	 *
+	 * @param mappingName The name of the mappings, used in the name of the mapped jar
+	 * @param mappings The factory for the joined official to named mappings
+	 * @param mappingHash The hash of the files both the Intermediary and named mappings are read from
+	 */
+	protected void makeMappedDirectly(String mappingName, MappingFactory mappings, String mappingHash) {
+		if (split) throw new IllegalStateException("Split merging makes the merged jar in Intermediary, use makeMapped instead");
+
+		String key = ArtifactCache.makeKey(intermediaryKey, mappingHash, "official", "named", REMAP_OPTIONS);
+		remapIfInvalid(mergedJar, mappedJar = cache.resolve(String.format(MAPPED_JAR, mappingName)), key, mappings, "official", "named");
 	}
 
 	public Path getMapped() {
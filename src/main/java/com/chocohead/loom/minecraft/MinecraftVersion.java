@@ -4,6 +4,8 @@ import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import com.google.gson.annotations.SerializedName;
@@ -21,20 +23,27 @@ public class MinecraftVersion {
 			}
 
 			public static class OS {
+				/** The same few patterns are used by most libraries, so they're only compiled once */
+				private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
 				public OperatingSystem name;
 				public String version;
 				public String arch;
 
+				private static boolean matches(String regex, String input) {
+					return PATTERNS.computeIfAbsent(regex, Pattern::compile).matcher(input).matches();
+				}
+
 				public boolean doesMatch() {
 					if (name != null && name != OperatingSystem.get()) {
 						return false;
 					}
 
-					if (version != null && !Pattern.matches(version, System.getProperty("os.version"))) {
+					if (version != null && !matches(version, System.getProperty("os.version"))) {
 						return false;
 					}
 
-					if (arch != null && !Pattern.matches(arch, System.getProperty("os.arch"))) {
+					if (arch != null && !matches(arch, System.getProperty("os.arch"))) {
 						return false;
 					}
 
@@ -7,7 +7,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import com.google.gson.Gson;
 
@@ -21,6 +26,14 @@ public class MinecraftVersions {
 		String id;
 		private URL url;
 
+		Version() {
+		}
+
+		Version(String id, URL url) {
+			this.id = id;
+			this.url = url;
+		}
+
 		public String getID() {
 			return id;
 		}
@@ -43,14 +56,18 @@ public class MinecraftVersions {
 				DownloadUtil.downloadIfChanged(url, from);
 			}
 
-			try (Reader reader = Files.newBufferedReader(from)) {
-				return GSON.fromJson(reader, MinecraftVersion.class);
-			}
+			return VersionReader.read(from);
 		}
 	}
 
+	/** The system property for how many minutes the version manifest is trusted before it is checked again, defaulting to 60 */
+	public static final String TTL_PROPERTY = "loom.manifestTTL";
+	private static final String MANIFEST_URL = "https://launchermeta.mojang.com/mc/game/version_manifest.json";
+	/** The manifests currently being checked in the background */
+	private static final Set<Path> REVALIDATING = ConcurrentHashMap.newKeySet();
 	static final transient Gson GSON = new Gson();
 	private List<Version> versions = new ArrayList<>();
+	private transient Map<String, Version> versionsById;
 
 	public static MinecraftVersions get(Path from, boolean offline) throws IOException {
 		if (offline) {
@@ -63,7 +80,7 @@ public class MinecraftVersions {
 			}
 		} else {
 			JkLog.trace("Downloading version manifests");
-			DownloadUtil.downloadIfChanged(new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json"), from);
+			DownloadUtil.downloadIfChanged(new URL(MANIFEST_URL), from);
 		}
 
 		try (Reader reader = Files.newBufferedReader(from)) {
@@ -71,17 +88,95 @@ public class MinecraftVersions {
 		}
 	}
 
+	/**
+	 * Finds the given version in the version manifest, only checking the manifest is up to date if it hasn't been recently.
+	 * A version which is already known is returned straight away with the manifest checked in the background,
+	 * only versions which aren't known have to wait for the manifest to be checked.
+	 *
+	 * @param from Where the version manifest is (or should be) kept
+	 * @param id The id of the version to find
+	 * @param offline Whether to only use the manifest which has already been downloaded
+	 *
+	 * @return The version with the given id, or <code>null</code> if there isn't one
+	 *
+	 * @throws IOException If an exception occurs downloading or reading the manifest
+	 */
+	public static Version find(Path from, String id, boolean offline) throws IOException {
+		ManifestIndex index = ManifestIndex.read(from);
+
+		if (offline) {
+			if (index == null) {
+				if (Files.notExists(from)) {
+					//If we don't have the manifests then there's nothing more we can do
+					throw new JkException("Version manifests not found at " + from);
+				}
+
+				//If the manifests exist already we'll presume that's good enough
+				JkLog.trace("Found version manifests, presuming up-to-date");
+				index = ManifestIndex.write(from, null, 0);
+			}
+
+			return index.get(id);
+		}
+
+		if (index != null) {
+			Version version = index.get(id);
+
+			if (version != null) {
+				long age = System.currentTimeMillis() - index.checked;
+
+				if (age < 0 || age >= TimeUnit.MINUTES.toMillis(Math.max(0, Long.getLong(TTL_PROPERTY, 60)))) {
+					revalidateInBackground(from, index);
+				} else {
+					JkLog.trace("Version manifests checked " + TimeUnit.MILLISECONDS.toMinutes(age) + " minutes ago, presuming up-to-date");
+				}
+
+				return version;
+			}
+		}
+
+		//The version might be newer than the manifest we have, so we'll have to wait and see
+		return revalidate(from, index, false).get(id);
+	}
+
+	private static ManifestIndex revalidate(Path from, ManifestIndex index, boolean quiet) throws IOException {
+		JkLog.trace("Downloading version manifests");
+		long checked = System.currentTimeMillis();
+		DownloadUtil.downloadIfChanged(new URL(MANIFEST_URL), from, quiet);
+
+		return ManifestIndex.write(from, index, checked);
+	}
+
+	private static void revalidateInBackground(Path from, ManifestIndex index) {
+		Path manifest = from.toAbsolutePath().normalize();
+		if (!REVALIDATING.add(manifest)) return; //Already being checked
+
+		Thread thread = new Thread(() -> {
+			try {
+				revalidate(from, index, true);
+			} catch (IOException | RuntimeException e) {
+				JkLog.warn("Error checking version manifests are up to date: " + e);
+			} finally {
+				REVALIDATING.remove(manifest);
+			}
+		}, "Version manifest revalidation");
+		thread.setDaemon(true); //The build can finish without it, the next build will check again
+		thread.start();
+	}
+
 	public List<Version> getVersions() {
 		return Collections.unmodifiableList(versions);
 	}
 
 	public Version getVersion(String id) {
-		for (Version version : versions) {
-			if (version.id.equals(id)) {
-				return version;
+		if (versionsById == null) {
+			Map<String, Version> byId = new HashMap<>();
+			for (Version version : versions) {
+				byId.putIfAbsent(version.id, version);
 			}
+			versionsById = byId;
 		}
 
-		return null;
+		return versionsById.get(id);
 	}
 }
\ No newline at end of file
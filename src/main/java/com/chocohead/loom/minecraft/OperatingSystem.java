@@ -12,6 +12,7 @@ public enum OperatingSystem {
 	@SerializedName(value = "linux", alternate = "unix")
 	LINUX("linux", "unix");
 
+	private static OperatingSystem current;
 	private final String[] names;
 
 	private OperatingSystem(String... names) {
@@ -19,6 +20,12 @@ public enum OperatingSystem {
 	}
 
 	public static OperatingSystem get() {
+		//The system isn't going to change whilst we're running, so only work it out once
+		if (current == null) current = find();
+		return current;
+	}
+
+	private static OperatingSystem find() {
 		String osName = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
 
 		for (OperatingSystem os : values()) {
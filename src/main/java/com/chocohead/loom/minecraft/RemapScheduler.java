@@ -0,0 +1,128 @@
+package com.chocohead.loom.minecraft;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+import com.google.common.base.Throwables;
+
+/**
+ * The remapping of every artifact in a dependency graph, shared between everywhere each artifact turns up so nothing is done twice
+ *
+ * <p>Each artifact is remapped as soon as everything it depends on has been, with the remapped jars of everything it
+ * (transitively) depends on as its classpath. Anything not depending on each other can be remapped at the same time.</p>
+ *
+ * @param <N> The type of node in the dependency graph
+ */
+final class RemapScheduler<N> {
+	/** A single artifact to be remapped, along with where it should be remapped to */
+	static final class Remap {
+		final Path artifact, remap, source;
+
+		Remap(Path artifact, Path remap, Path source) {
+			this.artifact = artifact;
+			this.remap = remap;
+			this.source = source;
+		}
+	}
+
+	/** How the dependency graph is walked, and each artifact in it remapped */
+	interface Graph<N> {
+		/** The nodes the given node directly depends on */
+		Collection<N> getChildren(N node);
+
+		/** Something equal between any nodes with the same artifacts and children, however many places they turn up in the graph */
+		Object identify(N node);
+
+		/** Works out where each artifact of the given node should be remapped to */
+		Stream<Remap> plan(N node);
+
+		/**
+		 * Remaps the given artifact, only called once everything in the classpath has been remapped
+		 *
+		 * @param task The artifact to remap
+		 * @param classpath The remapped jars of everything the artifact (transitively) depends on
+		 * @param classpathKeys The key of each jar in the classpath, in the same order
+		 *
+		 * @return The key of the remapped jar, which anything depending on it will be given in turn
+		 */
+		String remap(Remap task, Path[] classpath, String[] classpathKeys);
+	}
+
+	private final ExecutorService executor;
+	private final Graph<N> graph;
+	private final Map<Path, CompletableFuture<String>> tasks = new HashMap<>();
+	private final Map<Path, Path> remappedToSource = new HashMap<>();
+	private final Map<Object, Set<Path>> scheduledNodes = new HashMap<>();
+
+	RemapScheduler(ExecutorService executor, Graph<N> graph) {
+		this.executor = executor;
+		this.graph = graph;
+	}
+
+	/**
+	 * Schedules the given node and everything it depends on to be remapped
+	 *
+	 * @param node The node in the dependency graph to remap
+	 *
+	 * @return The remapped paths of the node and everything it (transitively) depends on
+	 */
+	Set<Path> schedule(N node) {
+		//The same dependency can turn up in lots of places in the graph, but it will depend on the same things each time
+		Object key = graph.identify(node);
+		Set<Path> scheduled = scheduledNodes.get(key);
+		if (scheduled != null) return scheduled;
+
+		Set<Path> dependencies = new LinkedHashSet<>();
+		for (N child : graph.getChildren(node)) {
+			dependencies.addAll(schedule(child));
+		}
+
+		Path[] classpath = dependencies.toArray(new Path[0]);
+		@SuppressWarnings("unchecked")
+		CompletableFuture<String>[] waitingOn = new CompletableFuture[classpath.length];
+		for (int i = 0; i < classpath.length; i++) {
+			waitingOn[i] = tasks.get(classpath[i]);
+		}
+		CompletableFuture<Void> ready = CompletableFuture.allOf(waitingOn);
+
+		Set<Path> out = new LinkedHashSet<>();
+		graph.plan(node).forEach(remap -> {
+			assert !remappedToSource.containsKey(remap.remap) || Objects.equals(remappedToSource.get(remap.remap), remap.source);
+			remappedToSource.put(remap.remap, remap.source);
+
+			//Only needs to wait for what it depends on, anything else can be remapped at the same time
+			tasks.computeIfAbsent(remap.remap, k -> ready.thenApplyAsync(nothing -> {
+				String[] classpathKeys = new String[waitingOn.length];
+				for (int i = 0; i < waitingOn.length; i++) {
+					classpathKeys[i] = waitingOn[i].join(); //Already done given ready is
+				}
+
+				return graph.remap(remap, classpath, classpathKeys);
+			}, executor));
+			out.add(remap.remap);
+		});
+
+		out.addAll(dependencies);
+		scheduledNodes.put(key, out);
+		return out;
+	}
+
+	/** Waits for everything scheduled to be remapped, rethrowing the first failure if any remapping failed */
+	void awaitAll() {
+		try {
+			CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException("Failed to remap jar", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import com.chocohead.loom.util.ArtifactCache;
+import com.chocohead.loom.util.ArtifactCache.ArtifactMaker;
+
+/**
+ * A store of remapped jars shared between every project (and process) using the same directory, keyed by everything which goes into making each jar.
+ * Projects link to the jars rather than copying them, whilst the least recently used jars are removed once the store grows past its size limit.
+ */
+public final class RemapStore {
+	/**
+	 * Stops jars being evicted whilst they are being provided, both between threads and between processes sharing the same store
+	 *
+	 * <p>Anything providing holds the lock shared, whilst eviction holds it exclusively. A process can only hold one lock on a file,
+	 * so the shared file lock is taken by the first thread to start providing and released by the last to finish.</p>
+	 */
+	private static final class StoreLock {
+		private final Path file;
+		private final ReadWriteLock localLock = new ReentrantReadWriteLock();
+		private int sharers;
+		private FileChannel channel;
+		private FileLock lock;
+
+		StoreLock(Path file) {
+			this.file = file;
+		}
+
+		private FileChannel open() throws IOException {
+			//Shared locks need the channel to be readable, exclusive ones need it to be writable
+			return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		void lockShared() throws IOException {
+			localLock.readLock().lock();
+
+			try {
+				synchronized (this) {
+					if (sharers == 0) {
+						channel = open();
+
+						try {
+							lock = channel.lock(0, Long.MAX_VALUE, true);
+						} catch (IOException | RuntimeException e) {
+							channel.close();
+							throw e;
+						}
+					}
+
+					sharers++;
+				}
+			} catch (IOException | RuntimeException e) {
+				localLock.readLock().unlock();
+				throw e;
+			}
+		}
+
+		void unlockShared() throws IOException {
+			try {
+				synchronized (this) {
+					if (--sharers == 0) {
+						try (FileChannel channel = this.channel) {
+							lock.release();
+						} finally {
+							this.channel = null;
+							lock = null;
+						}
+					}
+				}
+			} finally {
+				localLock.readLock().unlock();
+			}
+		}
+
+		interface ExclusiveTask {
+			void run() throws IOException;
+		}
+
+		void runExclusively(ExclusiveTask task) throws IOException {
+			localLock.writeLock().lock();
+
+			try (FileChannel channel = open(); FileLock lock = channel.lock()) {
+				task.run();
+			} finally {
+				localLock.writeLock().unlock();
+			}
+		}
+	}
+	/** The lock for each store directory, shared between every instance using the same directory */
+	private static final ConcurrentMap<Path, StoreLock> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final long maxSize;
+	private final StoreLock lock;
+
+	/**
+	 * Creates a store in the given directory
+	 *
+	 * @param root The directory the store keeps its jars in
+	 * @param maxSize The number of bytes the store can grow to before older jars are evicted
+	 */
+	public RemapStore(Path root, long maxSize) {
+		this.root = root;
+		this.maxSize = maxSize;
+
+		JkUtilsPath.createDirectories(root);
+		lock = LOCKS.computeIfAbsent(root.toAbsolutePath().normalize(), dir -> new StoreLock(dir.resolve(".evict.lock")));
+	}
+
+	/**
+	 * Makes the given artifact if the store doesn't have it already, then links it into the given path
+	 *
+	 * @param key The key of the inputs the artifact is made from, see {@link ArtifactCache#makeKey(Object...)}
+	 * @param to Where the artifact is wanted, which should be outside the store
+	 * @param maker The means of producing the artifact if the store doesn't have it
+	 *
+	 * @throws IOException If an exception occurs making or linking the artifact
+	 */
+	public void provide(String key, Path to, ArtifactMaker maker) throws IOException {
+		Path entry = root.resolve(key);
+		Path stored = entry.resolve(to.getFileName().toString());
+
+		//The entry can't be evicted from between being made and being linked to
+		lock.lockShared();
+		try {
+			JkUtilsPath.createDirectories(entry);
+
+			if (ArtifactCache.makeIfInvalid(stored, key, maker)) {
+				JkLog.trace("Added " + to.getFileName() + " to shared remap store");
+			}
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis())); //Mark as recently used
+
+			ArtifactCache.makeIfInvalid(to, key, temp -> link(stored, temp));
+		} finally {
+			lock.unlockShared();
+		}
+	}
+
+	/** Links the given path from the store to the given path, falling back to a symbolic link then a copy if hard links aren't supported */
+	private static void link(Path stored, Path to) throws IOException {
+		try {
+			Files.createLink(to, stored);
+			return;
+		} catch (UnsupportedOperationException | FileSystemException e) {
+			JkLog.trace("Unable to hard link " + to.getFileName() + " from shared remap store: " + e);
+		}
+
+		try {
+			Files.createSymbolicLink(to, stored.toAbsolutePath());
+			return;
+		} catch (UnsupportedOperationException | FileSystemException e) {
+			JkLog.trace("Unable to symbolically link " + to.getFileName() + " from shared remap store: " + e);
+		}
+
+		Files.copy(stored, to, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static long sizeOf(Path entry) {
+		try (Stream<Path> files = Files.walk(entry)) {
+			return files.filter(Files::isRegularFile).mapToLong(file -> {
+				try {
+					return Files.size(file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).sum();
+		} catch (IOException | UncheckedIOException e) {
+			return 0; //Probably being evicted by someone else
+		}
+	}
+
+	/**
+	 * Removes the least recently used jars until the store is within its size limit, waiting for any jars being provided to finish first
+	 *
+	 * @throws IOException If an exception occurs listing the store
+	 */
+	public void evict() throws IOException {
+		lock.runExclusively(() -> {
+			List<Path> entries = new ArrayList<>();
+			try (Stream<Path> stream = Files.list(root)) {
+				stream.filter(Files::isDirectory).forEach(entries::add);
+			}
+
+			long size = 0;
+			List<Long> sizes = new ArrayList<>(entries.size());
+			for (Path entry : entries) {
+				long entrySize = sizeOf(entry);
+				sizes.add(entrySize);
+				size += entrySize;
+			}
+			if (size <= maxSize) return;
+
+			List<Integer> order = new ArrayList<>(entries.size());
+			for (int i = 0; i < entries.size(); i++) order.add(i);
+			order.sort(Comparator.comparing(i -> lastUsed(entries.get(i))));
+
+			for (int i : order) {
+				if (size <= maxSize) break;
+
+				try {
+					//Projects keep their own hard links (or copies), whilst symbolic links will be found broken and made again
+					MoreFiles.deleteRecursively(entries.get(i), RecursiveDeleteOption.ALLOW_INSECURE);
+					size -= sizes.get(i);
+					JkLog.trace("Evicted " + entries.get(i).getFileName() + " from shared remap store");
+				} catch (IOException e) {
+					JkLog.warn("Unable to evict " + entries.get(i) + " from shared remap store: " + e);
+				}
+			}
+		});
+	}
+
+	private static FileTime lastUsed(Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+}
@@ -3,11 +3,11 @@ package com.chocohead.loom.minecraft;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 import com.google.common.collect.Iterables;
@@ -27,18 +27,34 @@ import dev.jeka.core.api.depmanagement.JkResolveResult;
 import dev.jeka.core.api.depmanagement.JkScope;
 import dev.jeka.core.api.depmanagement.JkVersionedModule;
 import dev.jeka.core.api.java.project.JkJavaProject;
+import dev.jeka.core.api.system.JkLog;
 
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 
 import com.chocohead.loom.minecraft.MappingResolver.MappingFactory;
+import com.chocohead.loom.minecraft.RemapScheduler.Graph;
+import com.chocohead.loom.minecraft.RemapScheduler.Remap;
+import com.chocohead.loom.util.ArtifactCache;
+import com.chocohead.loom.util.ArtifactCache.ArtifactMaker;
 import com.chocohead.loom.util.FileUtils;
 
 public final class RemappedSystem {
+	/** The system property for how many dependencies can be remapped at once, defaulting to the number of processors (up to {@value #DEFAULT_MAX_THREADS}) */
+	public static final String THREADS_PROPERTY = "loom.remapThreads";
+	/** The most dependencies remapped at once by default, given each remapper holds the whole classpath in memory */
+	private static final int DEFAULT_MAX_THREADS = 4;
+	/** Settings which change the output of remapping, included in the inputs of each remapped jar */
+	private static final String REMAP_OPTIONS = "renameInvalidLocals";
 	private final Path repoRoot;
 	private final Path[] classpath;
 	private IMappingProvider mappings;
+	/** The identity of {@link #mappings}, if known */
+	private String mappingKey;
+	private String classpathKey;
+	/** Where remapped jars are shared between projects, if anywhere */
+	private RemapStore store;
 	private JkDependencySet dependencies = JkDependencySet.of();
 	private JkRepoSet repos = JkRepoSet.of(JkRepo.of("https://maven.fabricmc.net"), JkRepo.of("https://libraries.minecraft.net"), JkRepo.ofMavenCentral(), JkRepo.ofMavenJCenter());
 
@@ -51,8 +67,41 @@ public final class RemappedSystem {
 		return withMappings(factory.create(from, to));
 	}
 
+	/**
+	 * Sets the mappings to remap dependencies with, along with the hash of where they come from so a change in mappings will remap everything again
+	 *
+	 * @param factory The factory to make the mappings with
+	 * @param from The namespace to map from
+	 * @param to The namespace to map to
+	 * @param mappingHash The hash of the files the mappings are made from
+	 *
+	 * @return This system for chaining
+	 *
+	 * @throws IOException If an exception occurs making the mappings
+	 */
+	public RemappedSystem withMappings(MappingFactory factory, String from, String to, String mappingHash) throws IOException {
+		withMappings(factory.create(from, to));
+		mappingKey = ArtifactCache.makeKey(mappingHash, from, to);
+
+		return this;
+	}
+
 	public RemappedSystem withMappings(IMappingProvider mappings) {
 		this.mappings = mappings;
+		mappingKey = null;
+
+		return this;
+	}
+
+	/**
+	 * Sets the store to keep remapped jars in, linking them into this system's repository rather than remapping them separately for each project
+	 *
+	 * @param store The store to share remapped jars through, or {@code null} to only keep them in this system's repository
+	 *
+	 * @return This system for chaining
+	 */
+	public RemappedSystem withSharedStore(RemapStore store) {
+		this.store = store;
 
 		return this;
 	}
@@ -103,86 +152,186 @@ public final class RemappedSystem {
 		return repos;
 	}
 
+	/** Works out where the given node's artifact should be remapped to */
+	private Remap plan(JkDependencyNode node) {
+		Path artifact = Iterables.getOnlyElement(node.getNodeInfo().getFiles());
+		assert Files.exists(artifact);
+
+		Path remap, source;
+		if (node.isModuleNode()) {
+			JkVersionedModule module = node.getModuleInfo().getResolvedVersionedModule();
+
+			StringBuilder path = new StringBuilder("net.fabricmc.remapped.");
+			path.append(module.getModuleId().getGroup());
+			path.append('/');
+			path.append(module.getModuleId().getName());
+
+			path.append('/');
+			path.append(module.getModuleId().getName());
+			assert !module.getVersion().isUnspecified();
+			path.append('-');
+			path.append(module.getVersion().getValue());
+
+			remap = repoRoot.resolve(path.append(".jar").toString());
+			source = repos.get(JkModuleDependency.of(module).withClassifier("sources"));
+		} else {
+			String name = MoreFiles.getNameWithoutExtension(artifact);
+			assert "jar".equals(MoreFiles.getFileExtension(artifact));
+
+			remap = repoRoot.resolve("net.fabricmc.synthetic/" + name + ".jar");
+			source = artifact.resolveSibling(name + "-sources.jar");
+		}
+
+		return new Remap(artifact, remap, source);
+	}
+
+	/** Splits the given node into a single node per file it has, so each can be remapped separately */
+	private static Stream<JkDependencyNode> split(JkDependencyNode node) {
+		switch (node.getNodeInfo().getFiles().size()) {
+		case 0: //Empty dependency apparently?
+			assert false: node;
+		return Stream.empty();
+
+		case 1:
+			return Stream.of(node);
+
+		default:
+			assert !node.isModuleNode();
+			Set<JkScope> scopes = node.getNodeInfo().getDeclaredScopes();
+			return node.getNodeInfo().getFiles().stream().map(JkFileSystemDependency::of).map(dep -> JkDependencyNode.ofFileDep(dep, scopes));
+		}
+	}
+
+	/** Where the hashes of artifacts are stamped, as they mostly belong to dependency caches or the project itself so shouldn't be stamped in place */
+	private Path getStampDir() {
+		return repoRoot.resolve(".stamps");
+	}
+
+	/** Gets a fingerprint of the contents of {@link #classpath}, which every remapped jar depends on */
+	private synchronized String getClasspathKey() {
+		if (classpathKey == null) {
+			Object[] hashes = new Object[classpath.length];
+
+			for (int i = 0; i < classpath.length; i++) {
+				hashes[i] = Files.isRegularFile(classpath[i]) ? FileUtils.stampedSHA1(classpath[i], getStampDir()) : classpath[i].toAbsolutePath();
+			}
+
+			classpathKey = ArtifactCache.makeKey(hashes);
+		}
+
+		return classpathKey;
+	}
+
+	/**
+	 * Makes the key of a remapped jar from everything which goes into remapping it
+	 *
+	 * @param artifactHash The SHA-1 of the artifact being remapped
+	 * @param mappingKey The identity of the mappings being remapped with, if known
+	 * @param classpathKey The fingerprint of the shared classpath
+	 * @param dependencyKeys The keys of the remapped jars the artifact depends on
+	 *
+	 * @return The key for the remapped jar
+	 */
+	static String makeRemapKey(String artifactHash, String mappingKey, String classpathKey, String[] dependencyKeys) {
+		Object[] inputs = new Object[dependencyKeys.length + 4];
+		inputs[0] = artifactHash;
+		inputs[1] = mappingKey;
+		inputs[2] = classpathKey;
+		inputs[3] = REMAP_OPTIONS;
+		System.arraycopy(dependencyKeys, 0, inputs, 4, dependencyKeys.length);
+
+		return ArtifactCache.makeKey(inputs);
+	}
+
+	private String remap(Remap task, Path[] dependencies, String[] dependencyKeys, boolean concurrent) {
+		//Unchanged artifacts are stamped with their hash, so an up to date jar can be found without reading the artifact again
+		String key = makeRemapKey(FileUtils.stampedSHA1(task.artifact, getStampDir()), mappingKey, getClasspathKey(), dependencyKeys);
+
+		try {
+			MoreFiles.createParentDirectories(task.remap);
+
+			//A changed artifact, mappings or classpath will all make a different key, whilst half written jars never get one
+			ArtifactMaker maker = output -> {
+				TinyRemapper.Builder builder = TinyRemapper.newRemapper().withMappings(mappings).renameInvalidLocals(true);
+				//Dependencies being remapped at once already spread over the processors, without each remapper making a thread per processor too
+				if (concurrent) builder.threads(1);
+				TinyRemapper remapper = builder.build();
+
+				try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
+					outputConsumer.addNonClassFiles(task.artifact);
+					remapper.readClassPath(dependencies);
+					remapper.readClassPath(classpath);
+					remapper.readInputs(task.artifact);
+
+					remapper.apply(outputConsumer);
+				} finally {
+					remapper.finish();
+				}
+			};
+
+			//Without knowing the mappings the key can't be trusted to mean the same jar in another project
+			if (store != null && mappingKey != null) {
+				store.provide(key, task.remap, maker);
+			} else {
+				ArtifactCache.makeIfInvalid(task.remap, key, maker);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to remap jar", e);
+		}
+		assert Files.exists(task.remap);
+
+		return key;
+	}
+
 	public void copyTo(JkJavaProject project) {
 		repos.getRepoList().forEach(project.getMaker()::addDownloadRepo);
 		project.getMaker().addDownloadRepo(JkRepo.ofMaven(repoRoot));
 
 		JkDependencyResolver resolver = JkDependencyResolver.of(repos).withModuleHolder(JkVersionedModule.ofUnspecifiedVerion(JkModuleId.of("com.chocohead.loom.remapped", repoRoot.getFileName().toString())));
-		Map<Path, Path> remappedToSource = new HashMap<>();
-
-		for (JkScope scope : dependencies.getDeclaredScopes()) {
-			JkResolveResult result = resolver.resolve(dependencies, scope).assertNoError();
-
-			result.getDependencyTree().toFlattenList().stream().flatMap(node -> {
-				switch (node.getNodeInfo().getFiles().size()) {
-				case 0: //Empty dependency apparently?
-					assert false: node;
-				return Stream.empty();
-
-				case 1:
-					return Stream.of(node);
+		int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			RemapScheduler<JkDependencyNode> scheduler = new RemapScheduler<>(executor, new Graph<JkDependencyNode>() {
+				@Override
+				public Collection<JkDependencyNode> getChildren(JkDependencyNode node) {
+					return node.getChildren();
+				}
 
-				default:
-					assert !node.isModuleNode();
-					assert node.getNodeInfo().getDeclaredScopes().contains(scope);
-					return node.getNodeInfo().getFiles().stream().map(JkFileSystemDependency::of).map(dep -> JkDependencyNode.ofFileDep(dep, Collections.singleton(scope)));
+				@Override
+				public Object identify(JkDependencyNode node) {
+					return Arrays.asList(node.isModuleNode() ? node.getModuleInfo().getResolvedVersionedModule() : null, node.getNodeInfo().getFiles());
 				}
-			}).collect(Collectors.mapping(node -> {
-				Path artifact = Iterables.getOnlyElement(node.getNodeInfo().getFiles());
-				assert Files.exists(artifact);
-
-				Path remap, source;
-				if (node.isModuleNode()) {
-					JkVersionedModule module = node.getModuleInfo().getResolvedVersionedModule();
-
-					StringBuilder path = new StringBuilder("net.fabricmc.remapped.");
-					path.append(module.getModuleId().getGroup());
-					path.append('/');
-					path.append(module.getModuleId().getName());
-
-					path.append('/');
-					path.append(module.getModuleId().getName());
-					assert !module.getVersion().isUnspecified();
-					path.append('-');
-					path.append(module.getVersion().getValue());
-
-					remap = repoRoot.resolve(path.append(".jar").toString());
-					source = repos.get(JkModuleDependency.of(module).withClassifier("sources"));
-				} else {
-					String name = MoreFiles.getNameWithoutExtension(artifact);
-					assert "jar".equals(MoreFiles.getFileExtension(artifact));
-
-					remap = repoRoot.resolve("net.fabricmc.synthetic/" + name + ".jar");
-					source = artifact.resolveSibling(name + "-sources.jar");
+
+				@Override
+				public Stream<Remap> plan(JkDependencyNode node) {
+					return split(node).map(RemappedSystem.this::plan);
 				}
 
-				if (Files.notExists(remap)) {
-					try {
-						MoreFiles.createParentDirectories(remap);
-						TinyRemapper remapper = TinyRemapper.newRemapper().withMappings(mappings).renameInvalidLocals(true).build();
-
-						try (OutputConsumerPath outputConsumer = new OutputConsumerPath(remap)) {
-							outputConsumer.addNonClassFiles(artifact);
-							remapper.readClassPath(remappedToSource.keySet().toArray(new Path[0]));
-							remapper.readClassPath(classpath);
-							remapper.readInputs(artifact);
-
-							remapper.apply(outputConsumer);
-						}
-
-						remapper.finish();
-					} catch (IOException e) {
-						FileUtils.deleteAfterCrash(remap, e);
-						throw new RuntimeException("Failed to remap jar", e);
-					}
+				@Override
+				public String remap(Remap task, Path[] classpath, String[] classpathKeys) {
+					return RemappedSystem.this.remap(task, classpath, classpathKeys, threads > 1);
 				}
-				assert Files.exists(remap);
+			});
+
+			//Resolving every scope together gives a single tree where each node knows which scopes it is in, rather than a tree per scope
+			JkResolveResult result = resolver.resolve(dependencies, dependencies.getDeclaredScopes().toArray(new JkScope[0])).assertNoError();
 
-				assert !remappedToSource.containsKey(remap) || Objects.equals(remappedToSource.get(remap), source);
-				remappedToSource.put(remap, source);
+			for (JkDependencyNode node : result.getDependencyTree().getChildren()) {
+				scheduler.schedule(node);
+			}
+
+			scheduler.awaitAll();
+		} finally {
+			executor.shutdown();
+		}
 
-				return remap;
-			}, Collectors.toList()));
+		if (store != null) {
+			try {
+				store.evict();
+			} catch (IOException e) {
+				JkLog.warn("Unable to evict old jars from shared remap store: " + e);
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,575 @@
+package com.chocohead.loom.minecraft;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import dev.jeka.core.api.system.JkLog;
+
+import com.chocohead.loom.minecraft.MinecraftVersion.AssetIndex;
+import com.chocohead.loom.minecraft.MinecraftVersion.Download;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library.Downloads;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library.Extraction;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library.Rule;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library.Rule.Action;
+import com.chocohead.loom.util.FileUtils;
+
+/**
+ * Reads a version's JSON into a {@link MinecraftVersion}, only keeping the parts which are used and the libraries which apply to the current system.
+ * The result is also cached in a compact form beside the JSON for each operating system, which is used for as long as the JSON doesn't change.
+ *
+ * <p>The cache layout is a header of the magic, version, the size and last modified time of the JSON the cache was made from, and the
+ * operating system, version and architecture the libraries were filtered for; followed by the version's id, downloads, asset index and libraries</p>
+ */
+final class VersionReader {
+	private static final int MAGIC = 0x4D435652; //MCVR
+	private static final int VERSION = 1;
+
+	private VersionReader() {
+	}
+
+	static Path cacheFor(Path json) {
+		return json.resolveSibling(json.getFileName().toString() + '.' + OperatingSystem.get().name().toLowerCase(Locale.ENGLISH) + ".filtered");
+	}
+
+	/**
+	 * Reads the given version JSON, using the cached result if the JSON hasn't changed since it was last read on the same system
+	 *
+	 * @param json The version JSON to read
+	 *
+	 * @return The version with only the libraries which apply to the current system
+	 *
+	 * @throws IOException If an exception occurs reading the JSON
+	 */
+	static MinecraftVersion read(Path json) throws IOException {
+		Path cache = cacheFor(json);
+		BasicFileAttributes attributes = Files.readAttributes(json, BasicFileAttributes.class);
+
+		if (Files.exists(cache)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == attributes.size() && in.readLong() == attributes.lastModifiedTime().toMillis()
+						&& OperatingSystem.get().name().equals(in.readUTF()) && System.getProperty("os.version").equals(in.readUTF()) && System.getProperty("os.arch").equals(in.readUTF())) {
+					return readCache(in);
+				}
+			} catch (IOException e) {
+				JkLog.trace("Error reading cached version from " + cache + ": " + e);
+			}
+		}
+
+		MinecraftVersion version;
+		try (JsonReader reader = new JsonReader(Files.newBufferedReader(json))) {
+			version = readVersion(reader);
+		}
+
+		try {
+			FileUtils.writeDataAtomically(cache, out -> {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(attributes.size());
+				out.writeLong(attributes.lastModifiedTime().toMillis());
+				out.writeUTF(OperatingSystem.get().name());
+				out.writeUTF(System.getProperty("os.version"));
+				out.writeUTF(System.getProperty("os.arch"));
+
+				writeCache(version, out);
+			});
+		} catch (IOException e) {
+			//Not the end of the world, the JSON will just be read again next time
+			JkLog.warn("Error caching version to " + cache + ": " + e);
+		}
+
+		return version;
+	}
+
+	/**
+	 * Reads a version from the given JSON, skipping anything which isn't used
+	 *
+	 * @param reader The reader positioned at the start of the version's object
+	 *
+	 * @return The version with only the libraries which apply to the current system
+	 *
+	 * @throws IOException If an exception occurs reading the JSON
+	 */
+	static MinecraftVersion readVersion(JsonReader reader) throws IOException {
+		MinecraftVersion version = new MinecraftVersion();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				version.id = nextString(reader);
+				break;
+
+			case "downloads":
+				version.downloads = readDownloadMap(reader);
+				break;
+
+			case "assetIndex":
+				version.assetIndex = readAssetIndex(reader);
+				break;
+
+			case "libraries":
+				version.libraries = readLibraries(reader);
+				break;
+
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return version;
+	}
+
+	private static boolean nextNull(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return true;
+		}
+
+		return false;
+	}
+
+	private static String nextString(JsonReader reader) throws IOException {
+		return nextNull(reader) ? null : reader.nextString();
+	}
+
+	private static Map<String, Download> readDownloadMap(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		Map<String, Download> downloads = new HashMap<>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			downloads.put(reader.nextName(), readDownload(reader));
+		}
+		reader.endObject();
+
+		return downloads;
+	}
+
+	private static Download readDownload(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		Download download = new Download();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "url":
+				String url = nextString(reader);
+				if (url != null) download.url = new URL(url);
+				break;
+
+			case "sha1":
+				download.hash = nextString(reader);
+				break;
+
+			case "size":
+				download.size = reader.nextInt();
+				break;
+
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return download;
+	}
+
+	private static AssetIndex readAssetIndex(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		AssetIndex index = new AssetIndex();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				index.id = nextString(reader);
+				break;
+
+			case "url":
+				String url = nextString(reader);
+				if (url != null) index.url = new URL(url);
+				break;
+
+			case "sha1":
+				index.hash = nextString(reader);
+				break;
+
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return index;
+	}
+
+	private static List<Library> readLibraries(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		List<Library> libraries = new ArrayList<>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			Library library = readLibrary(reader);
+
+			//The rules have been used now, so there's no need to keep them around
+			if (library.shouldUse()) {
+				library.rules = null;
+				libraries.add(library);
+			}
+		}
+		reader.endArray();
+
+		return libraries;
+	}
+
+	private static Library readLibrary(JsonReader reader) throws IOException {
+		Library library = new Library();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "name":
+				library.name = nextString(reader);
+				break;
+
+			case "rules":
+				library.rules = readRules(reader);
+				break;
+
+			case "natives":
+				library.natives = readNatives(reader);
+				break;
+
+			case "extract":
+				library.extract = readExtraction(reader);
+				break;
+
+			case "downloads":
+				library.downloads = readLibraryDownloads(reader);
+				break;
+
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return library;
+	}
+
+	private static OperatingSystem readOS(String name) {
+		switch (name) {
+		case "windows":
+		case "win":
+			return OperatingSystem.WINDOWS;
+
+		case "osx":
+		case "mac":
+			return OperatingSystem.OSX;
+
+		case "linux":
+		case "unix":
+			return OperatingSystem.LINUX;
+
+		default:
+			return null;
+		}
+	}
+
+	private static Rule[] readRules(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		List<Rule> rules = new ArrayList<>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			Rule rule = new Rule();
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "action":
+					String action = nextString(reader);
+					rule.action = "disallow".equals(action) ? Action.DISALLOW : "allow".equals(action) ? Action.ALLOW : null;
+					break;
+
+				case "os":
+					if (nextNull(reader)) break;
+					rule.os = new Rule.OS();
+
+					reader.beginObject();
+					while (reader.hasNext()) {
+						switch (reader.nextName()) {
+						case "name":
+							String name = nextString(reader);
+							rule.os.name = name != null ? readOS(name) : null;
+							break;
+
+						case "version":
+							rule.os.version = nextString(reader);
+							break;
+
+						case "arch":
+							rule.os.arch = nextString(reader);
+							break;
+
+						default:
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					break;
+
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			rules.add(rule);
+		}
+		reader.endArray();
+
+		return rules.toArray(new Rule[0]);
+	}
+
+	private static Map<OperatingSystem, String> readNatives(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		Map<OperatingSystem, String> natives = new EnumMap<>(OperatingSystem.class);
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			OperatingSystem os = readOS(reader.nextName());
+
+			if (os != null) {
+				natives.put(os, nextString(reader));
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return natives;
+	}
+
+	private static Extraction readExtraction(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		Extraction extraction = new Extraction();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("exclude".equals(reader.nextName()) && !nextNull(reader)) {
+				List<String> exclude = new ArrayList<>();
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					exclude.add(reader.nextString());
+				}
+				reader.endArray();
+
+				extraction.exclude = exclude;
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return extraction;
+	}
+
+	private static Downloads readLibraryDownloads(JsonReader reader) throws IOException {
+		if (nextNull(reader)) return null;
+		Downloads downloads = new Downloads();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "artifact":
+				downloads.artifact = readDownload(reader);
+				break;
+
+			case "classifiers":
+				Map<String, Download> classifiers = readDownloadMap(reader);
+				if (classifiers != null) downloads.classifiers = classifiers;
+				break;
+
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return downloads;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) out.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeDownload(DataOutputStream out, Download download) throws IOException {
+		out.writeBoolean(download != null);
+
+		if (download != null) {
+			writeString(out, download.url != null ? download.url.toString() : null);
+			writeString(out, download.hash);
+			out.writeInt(download.size);
+		}
+	}
+
+	private static Download readDownload(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) return null;
+		Download download = new Download();
+
+		String url = readString(in);
+		if (url != null) download.url = new URL(url);
+		download.hash = readString(in);
+		download.size = in.readInt();
+
+		return download;
+	}
+
+	private static void writeDownloadMap(DataOutputStream out, Map<String, Download> downloads) throws IOException {
+		out.writeInt(downloads != null ? downloads.size() : -1);
+
+		if (downloads != null) {
+			for (Entry<String, Download> entry : downloads.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeDownload(out, entry.getValue());
+			}
+		}
+	}
+
+	private static Map<String, Download> readDownloadMap(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) return null;
+
+		Map<String, Download> downloads = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			downloads.put(in.readUTF(), readDownload(in));
+		}
+
+		return downloads;
+	}
+
+	private static void writeCache(MinecraftVersion version, DataOutputStream out) throws IOException {
+		writeString(out, version.id);
+		writeDownloadMap(out, version.downloads);
+
+		out.writeBoolean(version.assetIndex != null);
+		if (version.assetIndex != null) {
+			writeString(out, version.assetIndex.id);
+			writeString(out, version.assetIndex.url != null ? version.assetIndex.url.toString() : null);
+			writeString(out, version.assetIndex.hash);
+		}
+
+		out.writeInt(version.libraries != null ? version.libraries.size() : -1);
+		if (version.libraries == null) return;
+
+		for (Library library : version.libraries) {
+			writeString(out, library.name);
+
+			out.writeInt(library.natives != null ? library.natives.size() : -1);
+			if (library.natives != null) {
+				for (Entry<OperatingSystem, String> entry : library.natives.entrySet()) {
+					out.writeByte(entry.getKey().ordinal());
+					writeString(out, entry.getValue());
+				}
+			}
+
+			out.writeInt(library.extract != null ? library.extract.exclude.size() : -1);
+			if (library.extract != null) {
+				for (String exclude : library.extract.exclude) {
+					out.writeUTF(exclude);
+				}
+			}
+
+			out.writeBoolean(library.downloads != null);
+			if (library.downloads != null) {
+				writeDownload(out, library.downloads.artifact);
+				writeDownloadMap(out, library.downloads.classifiers);
+			}
+		}
+	}
+
+	private static MinecraftVersion readCache(DataInputStream in) throws IOException {
+		MinecraftVersion version = new MinecraftVersion();
+
+		version.id = readString(in);
+		version.downloads = readDownloadMap(in);
+
+		if (in.readBoolean()) {
+			version.assetIndex = new AssetIndex();
+			version.assetIndex.id = readString(in);
+			String url = readString(in);
+			if (url != null) version.assetIndex.url = new URL(url);
+			version.assetIndex.hash = readString(in);
+		}
+
+		int libraryCount = in.readInt();
+		if (libraryCount < 0) return version;
+
+		OperatingSystem[] systems = OperatingSystem.values();
+		version.libraries = new ArrayList<>(libraryCount);
+		for (int i = 0; i < libraryCount; i++) {
+			Library library = new Library();
+			library.name = readString(in);
+
+			int nativeCount = in.readInt();
+			if (nativeCount >= 0) {
+				library.natives = new EnumMap<>(OperatingSystem.class);
+
+				for (int j = 0; j < nativeCount; j++) {
+					library.natives.put(systems[in.readUnsignedByte()], readString(in));
+				}
+			}
+
+			int excludeCount = in.readInt();
+			if (excludeCount >= 0) {
+				library.extract = new Extraction();
+
+				if (excludeCount > 0) {
+					List<String> exclude = new ArrayList<>(excludeCount);
+					for (int j = 0; j < excludeCount; j++) {
+						exclude.add(in.readUTF());
+					}
+					library.extract.exclude = exclude;
+				}
+			}
+
+			if (in.readBoolean()) {
+				library.downloads = new Downloads();
+				library.downloads.artifact = readDownload(in);
+
+				Map<String, Download> classifiers = readDownloadMap(in);
+				library.downloads.classifiers = classifiers != null ? classifiers : Collections.emptyMap();
+			}
+
+			version.libraries.add(library);
+		}
+
+		return version;
+	}
+}
@@ -0,0 +1,108 @@
+package com.chocohead.loom.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+public class ArtifactCache {
+	/** An {@link IOException} throwing {@link java.util.function.Consumer Consumer}{@code <}Path{@code >} */
+	public interface ArtifactMaker {
+		void make(Path to) throws IOException;
+	}
+
+	/** File locks are held by the whole JVM, so threads need to take turns before asking for one */
+	private static final ConcurrentMap<Path, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	/**
+	 * Produces a key identifying the given inputs, which will change if any of the inputs do
+	 *
+	 * @param inputs The inputs which go into producing an artifact, compared using {@link String#valueOf(Object)}
+	 *
+	 * @return A hex string key uniquely identifying the given inputs
+	 */
+	public static String makeKey(Object... inputs) {
+		@SuppressWarnings("deprecation")
+		Hasher hasher = Hashing.sha1().newHasher();
+
+		for (Object input : inputs) {
+			hasher.putString(String.valueOf(input), StandardCharsets.UTF_8);
+			hasher.putByte((byte) 0); //Avoid ("ab", "c") and ("a", "bc") producing the same key
+		}
+
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Creates a new path in the same directory as the given path with <code>.key</code> on the end of the name
+	 *
+	 * @param artifact The {@link Path} to produce the key file for
+	 *
+	 * @return The (uncreated) key path for the given path
+	 */
+	private static Path getKeyFile(Path artifact) {
+		return artifact.resolveSibling(artifact.getFileName() + ".key");
+	}
+
+	/**
+	 * Checks whether the given artifact exists and was completely produced from inputs matching the given key
+	 *
+	 * @param artifact The path to the artifact to check
+	 * @param key The key of the inputs the artifact is expected to be made from
+	 *
+	 * @return Whether the artifact is present and up to date
+	 */
+	public static boolean isValid(Path artifact, String key) {
+		Path keyFile = getKeyFile(artifact);
+		if (Files.notExists(artifact) || Files.notExists(keyFile)) return false;
+
+		try {
+			return key.equals(MoreFiles.asCharSource(keyFile, StandardCharsets.UTF_8).read());
+		} catch (IOException e) {
+			return false; //If we can't read the key we can't trust the artifact
+		}
+	}
+
+	/**
+	 * Produces the given artifact if it is missing or was made from different inputs to those of the given key.
+	 * The artifact is made into a temporary file which is then moved into place, so either the old or the new
+	 * artifact is seen in full, whilst a lock file stops multiple processes from making the same artifact at once.
+	 *
+	 * @param artifact The path the artifact should be found at
+	 * @param key The key of the inputs the artifact is to be made from, see {@link #makeKey(Object...)}
+	 * @param maker The means of producing the artifact at the path it is given
+	 *
+	 * @return Whether the artifact needed making
+	 *
+	 * @throws IOException If an exception occurs making the artifact
+	 */
+	public static boolean makeIfInvalid(Path artifact, String key, ArtifactMaker maker) throws IOException {
+		if (isValid(artifact, key)) return false; //Nothing to do
+
+		Path lockFile = artifact.resolveSibling(artifact.getFileName() + ".lock");
+		synchronized (LOCAL_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				if (isValid(artifact, key)) return false; //Someone else made it whilst we were waiting
+
+				FileUtils.writeAtomically(artifact, temp -> {
+					maker.make(temp);
+
+					//Never leave an old key vouching for a new artifact
+					Files.deleteIfExists(getKeyFile(artifact));
+				});
+				FileUtils.writeAtomically(getKeyFile(artifact), temp -> MoreFiles.asCharSink(temp, StandardCharsets.UTF_8).write(key));
+			}
+		}
+
+		return true;
+	}
+}
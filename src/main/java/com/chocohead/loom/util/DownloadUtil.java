@@ -1,21 +1,94 @@
 package com.chocohead.loom.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.MoreFiles;
 
 import dev.jeka.core.api.system.JkLog;
-import dev.jeka.core.api.utils.JkUtilsIO;
 
 public class DownloadUtil {
+	/** The system property for how many times a failed download is tried again, defaulting to 3 */
+	public static final String RETRIES_PROPERTY = "loom.downloadRetries";
+	/** The system property for how many milliseconds to wait before trying a failed download again, doubling each time, defaulting to 1000 */
+	public static final String BACKOFF_PROPERTY = "loom.downloadBackoff";
+	/** The file in each directory downloads lock whilst filling in their part files, each locking their own region of it */
+	private static final String LOCK_FILE = ".downloads.lock";
+	private static final ConcurrentMap<List<Object>, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	/** A failed download which won't go any better if it is tried again */
+	private static final class FatalDownloadException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		FatalDownloadException(String message) {
+			super(message);
+		}
+	}
+
+	/** A file to be downloaded as part of {@link DownloadUtil#downloadAll(Collection, int, boolean)} */
+	public static final class Request {
+		public final URL from;
+		public final Path to;
+		public final String sha1;
+		public final long size;
+
+		/**
+		 * Creates a request to download from the given {@link URL} to the given {@link Path} so long as there are differences between them
+		 *
+		 * @param from The URL of the file to be downloaded
+		 * @param to The destination to be saved to, and compared against if it exists
+		 */
+		public Request(URL from, Path to) {
+			this(from, to, null, -1);
+		}
+
+		/**
+		 * Creates a request to download from the given {@link URL} to the given {@link Path} unless it already has the given SHA1 checksum
+		 *
+		 * @param from The URL of the file to be downloaded
+		 * @param to The destination to be saved to, and compared against if it exists
+		 * @param sha1 The expected SHA1 checksum of the file, or <code>null</code> if it is unknown
+		 * @param size The expected size of the file in bytes, or <code>-1</code> if it is unknown
+		 */
+		public Request(URL from, Path to, String sha1, long size) {
+			this.from = from;
+			this.to = to;
+			this.sha1 = sha1;
+			this.size = size;
+		}
+
+		void download(boolean quiet) throws IOException {
+			downloadIfChanged(from, to, sha1, size, quiet);
+		}
+	}
+
 	/**
 	 * Download from the given {@link URL} to the given {@link Path} so long as there are differences between them
 	 *
@@ -38,17 +111,102 @@ public class DownloadUtil {
 	 * @throws IOException If an exception occurs during the process
 	 */
 	public static void downloadIfChanged(URL from, Path to, boolean quiet) throws IOException {
+		downloadIfChanged(from, to, null, -1, quiet);
+	}
+
+	/**
+	 * Download from the given {@link URL} to the given {@link Path} unless it already has the given SHA1 checksum,
+	 * checking the downloaded file has the expected checksum and size before it replaces the destination
+	 *
+	 * @param from The URL of the file to be downloaded
+	 * @param to The destination to be saved to, and compared against if it exists
+	 * @param sha1 The expected SHA1 checksum of the file, or <code>null</code> if it is unknown
+	 * @param size The expected size of the file in bytes, or <code>-1</code> if it is unknown
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If an exception occurs during the process, or the download doesn't match the checksum or size
+	 */
+	public static void downloadIfChanged(URL from, Path to, String sha1, long size, boolean quiet) throws IOException {
+		if (sha1 != null && FileUtils.matchesSHA1(to, sha1)) {
+			if (!quiet) JkLog.info("'" + to + "' Already up to date, skipping.");
+			return; //What we've got is what we expect
+		}
+
+		//Only one thread or process can be filling in the part file at once, without leaving a lock file behind for every download
+		Path lockFile = to.resolveSibling(LOCK_FILE);
+		long region = to.getFileName().toString().hashCode() & 0xFFFFFFFFL; //Anything else which lands on the same region just has to wait its turn
+		synchronized (LOCAL_LOCKS.computeIfAbsent(Arrays.asList(lockFile.toAbsolutePath().normalize(), region), key -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock(region, 1, false)) {
+				if (sha1 != null && FileUtils.matchesSHA1(to, sha1)) {
+					if (!quiet) JkLog.info("'" + to + "' Downloaded elsewhere, skipping.");
+					return; //Someone else downloaded it whilst we were waiting
+				}
+
+				//What we've got isn't what we expect, so is no use as a base for conditional requests
+				boolean exists = sha1 == null && Files.exists(to);
+				int retries = Math.max(0, Integer.getInteger(RETRIES_PROPERTY, 3));
+				long backoff = Math.max(0, Long.getLong(BACKOFF_PROPERTY, 1000));
+
+				for (int attempt = 0;; attempt++) {
+					try {
+						download(from, to, sha1, size, exists, quiet);
+						return;
+					} catch (FatalDownloadException e) {
+						throw e; //No amount of trying again will fix it
+					} catch (IOException e) {
+						if (attempt >= retries) throw e;
+
+						long wait = backoff << attempt;
+						JkLog.warn("Error downloading '" + to + "' (" + e + "), trying again in " + wait + "ms");
+
+						try {
+							Thread.sleep(wait);
+						} catch (InterruptedException interrupt) {
+							Thread.currentThread().interrupt();
+							e.addSuppressed(interrupt);
+							throw e;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make a single attempt to download from the given {@link URL} to the given {@link Path}, resuming from what was already downloaded if possible
+	 *
+	 * @param from The URL of the file to be downloaded
+	 * @param to The destination to be saved to
+	 * @param sha1 The expected SHA1 checksum of the file, or <code>null</code> if it is unknown
+	 * @param size The expected size of the file in bytes, or <code>-1</code> if it is unknown
+	 * @param exists Whether the destination can be compared against to avoid downloading
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If an exception occurs during the download, a {@link FatalDownloadException} if there is no point trying again
+	 */
+	private static void download(URL from, Path to, String sha1, long size, boolean exists, boolean quiet) throws IOException {
+		//Anything downloaded by a previous attempt is only any use if we know it is from the same version of the file
+		Path part = getPartFile(to);
+		String partValidator = loadPartValidator(part);
+		long resumeFrom = partValidator != null && Files.exists(part) ? Files.size(part) : 0;
+
 		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
 
 		//If the output already exists we'll use it's last modified time
-		if (Files.exists(to)) connection.setIfModifiedSince(Files.getLastModifiedTime(to).toMillis());
+		if (exists) connection.setIfModifiedSince(Files.getLastModifiedTime(to).toMillis());
 
 		//Try use the ETag if there's one for the file we're downloading
-		String etag = loadETag(to);
+		String etag = exists ? loadETag(to) : null;
 		if (etag != null) connection.setRequestProperty("If-None-Match", etag);
 
-		//We want to download gzip compressed stuff
-		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (resumeFrom > 0) {
+			//Ask for the rest of the file if it's still the same version, or the whole thing if it's not
+			connection.setRequestProperty("Range", "bytes=" + resumeFrom + '-');
+			connection.setRequestProperty("If-Range", partValidator);
+		} else {
+			//We want to download gzip compressed stuff, although we'll not be able to resume it
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+		}
 
 		//We shouldn't need to set a user agent, but it's here just in case
 		//connection.setRequestProperty("User-Agent", null);
@@ -60,29 +218,109 @@ public class DownloadUtil {
 		connection.connect();
 
 		int code = connection.getResponseCode();
-		if ((code < 200 || code > 299) && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
+		if (code == 416) {
+			//The part file doesn't fit the file anymore, start again from the beginning next time
+			release(connection);
+			deletePart(part);
+			throw new IOException("Unable to resume download of '" + to + "' from " + resumeFrom + " bytes");
+		} else if ((code < 200 || code > 299) && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
 			//Didn't get what we expected
-			throw new IOException(connection.getResponseMessage());
+			String message = connection.getResponseMessage();
+			release(connection);
+			throw code >= 500 ? new IOException(message) : new FatalDownloadException(message);
 		}
 
 		long modifyTime = connection.getHeaderFieldDate("Last-Modified", -1);
-		if (Files.exists(to) && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && Files.getLastModifiedTime(to).toMillis() >= modifyTime)) {
+		if (exists && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && Files.getLastModifiedTime(to).toMillis() >= modifyTime)) {
 			if (!quiet) JkLog.info("'" + to + "' Not Modified, skipping.");
+			release(connection);
+			deletePart(part);
 			return; //What we've got is already fine
 		}
 
+		boolean resumed = code == HttpURLConnection.HTTP_PARTIAL;
+		if (resumed) {
+			long rangeStart = getRangeStart(connection.getHeaderField("Content-Range"));
+
+			if (resumeFrom <= 0 || rangeStart != resumeFrom) {
+				//Whatever the server sent doesn't follow on from the part file, start again from the beginning next time
+				release(connection);
+				deletePart(part);
+				throw new IOException("Asked to resume download of '" + to + "' from " + resumeFrom + " bytes, but was sent " + connection.getHeaderField("Content-Range"));
+			}
+		} else {
+			resumeFrom = 0;
+		}
+
 		long contentLength = connection.getContentLengthLong();
-		if (!quiet && contentLength >= 0) JkLog.info("'" + to + "' Changed, downloading " + toNiceSize(contentLength));
+		if (!quiet && contentLength >= 0) {
+			JkLog.info("'" + to + "' Changed, " + (resumed ? "resuming download of " : "downloading ") + toNiceSize(contentLength));
+		}
+
+		//Compressed downloads can't be resumed, as the part file holds the uncompressed bytes rather than what the server's ranges would cover
+		boolean gzip = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+		String validator = gzip ? null : getValidator(connection);
+		if (validator != null) {
+			savePartValidator(part, validator);
+		} else {
+			Files.deleteIfExists(getPartValidatorFile(part));
+		}
+
+		//Download to the side so a failed or corrupt download never replaces what was there before
+		@SuppressWarnings("deprecation")
+		Hasher hasher = Hashing.sha1().newHasher();
+		long downloaded = resumeFrom;
+		byte[] buffer = new byte[8192];
+
+		if (resumed) {
+			//The hash has to cover what was downloaded before too
+			try (InputStream in = Files.newInputStream(part)) {
+				for (int read; (read = in.read(buffer)) >= 0;) {
+					hasher.putBytes(buffer, 0, read);
+				}
+			}
+		}
 
-		try (OutputStream out = Files.newOutputStream(to)) {//Try download to the output
-			JkUtilsIO.copy(connection.getInputStream(), out);
+		try (InputStream in = gzip ? new GZIPInputStream(connection.getInputStream()) : connection.getInputStream();
+				OutputStream out = resumed ? Files.newOutputStream(part, StandardOpenOption.APPEND) : Files.newOutputStream(part)) {
+			for (int read; (read = in.read(buffer)) >= 0;) {
+				out.write(buffer, 0, read);
+				hasher.putBytes(buffer, 0, read);
+				downloaded += read;
+			}
+
+			//Java treats the connection closing as the end of the download, even if it's short of what the server said it would send
+			if (!gzip && contentLength >= 0 && downloaded - resumeFrom != contentLength) {
+				throw new IOException("Connection closed after " + (downloaded - resumeFrom) + " of " + contentLength + " bytes");
+			}
 		} catch (IOException e) {
-			FileUtils.deleteAfterCrash(to, e);
+			//Keep what we've got if the next attempt will be able to resume from it
+			if (validator == null) FileUtils.deleteAfterCrash(part, e);
 			throw e;
 		}
 
+		//Check the download whilst it's still to the side, the hash having been calculated as it went
+		if (size >= 0 && downloaded != size) {
+			deletePart(part);
+			throw new FatalDownloadException("Expected " + size + " bytes from " + from + " but downloaded " + downloaded);
+		}
+		if (sha1 != null) {
+			String hash = hasher.hash().toString();
+
+			if (!sha1.equalsIgnoreCase(hash)) {
+				deletePart(part);
+				throw new FatalDownloadException("Expected SHA1 " + sha1 + " from " + from + " but downloaded " + hash);
+			}
+		}
+
 		//Set the modify time to match the server's (if we know it)
-		if (modifyTime > 0) Files.setLastModifiedTime(to, FileTime.fromMillis(modifyTime));
+		if (modifyTime > 0) Files.setLastModifiedTime(part, FileTime.fromMillis(modifyTime));
+
+		FileUtils.moveAtomically(part, to);
+		Files.deleteIfExists(getPartValidatorFile(part));
+
+		//We've already checked the hash, so there's no need to hash it again next time
+		if (sha1 != null) FileUtils.stampSHA1(to, sha1);
 
 		//Save the ETag (if we know it)
 		String eTag = connection.getHeaderField("ETag");
@@ -91,9 +329,193 @@ public class DownloadUtil {
 			if (!quiet && eTag.startsWith("W/")) JkLog.warn("Weak ETag found.");
 
 			saveETag(to, eTag);
+		} else {
+			//Never leave an old ETag vouching for the new file
+			Files.deleteIfExists(getETagFile(to));
+		}
+	}
+
+	/**
+	 * Gets the first byte the given <code>Content-Range</code> header says a partial response starts from
+	 *
+	 * @param contentRange The value of the header, which might be <code>null</code>
+	 *
+	 * @return The position the range starts from, or <code>-1</code> if the header is missing or invalid
+	 */
+	private static long getRangeStart(String contentRange) {
+		if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+
+		int split = contentRange.indexOf('-');
+		if (split < 0) return -1;
+
+		try {
+			return Long.parseLong(contentRange.substring("bytes ".length(), split).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets what identifies the version of the file the given connection is downloading, which is needed to safely resume downloading it
+	 *
+	 * @param connection The connection to the file being downloaded
+	 *
+	 * @return The strong ETag or last modified date of the file, or <code>null</code> if the server doesn't support resuming
+	 */
+	private static String getValidator(HttpURLConnection connection) throws IOException {
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL && !"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"))) {
+			return null; //Server won't do ranges, no point trying later
+		}
+
+		String eTag = connection.getHeaderField("ETag");
+		if (eTag != null && !eTag.startsWith("W/")) return eTag; //Weak ETags can't be used for If-Range
+
+		return connection.getHeaderField("Last-Modified");
+	}
+
+	/**
+	 * Closes the response of the given connection without using it, so the connection can be reused by the next request to the same host.
+	 * Java will drain anything short left in a normal response to keep the connection alive, or close the connection if there is too much left,
+	 * whereas error responses are only reused if they are read in full (which as they're normally just a short page is fine to do).
+	 *
+	 * @param connection The connection to release
+	 */
+	private static void release(HttpURLConnection connection) {
+		try {
+			if (connection.getResponseCode() >= 400) {
+				InputStream stream = connection.getErrorStream();
+
+				if (stream != null) {
+					try (InputStream in = stream) {
+						ByteStreams.exhaust(in);
+					}
+				}
+			} else {
+				connection.getInputStream().close();
+			}
+		} catch (IOException e) {
+			//Only a problem for the connection, which won't be reused
+		}
+	}
+
+	/**
+	 * Download everything in the given requests using up to the given number of threads, see {@link #downloadIfChanged(URL, Path, String, long, boolean)}.
+	 * Each finished connection is released back to the JVM's shared keep-alive cache, so later requests to the same host can skip the handshake.
+	 *
+	 * @param requests The files to be downloaded
+	 * @param concurrency The largest number of files to download at once
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If an exception occurs downloading any of the files, with any others suppressed into it
+	 */
+	public static void downloadAll(Collection<Request> requests, int concurrency, boolean quiet) throws IOException {
+		if (concurrency <= 1 || requests.size() <= 1) {
+			for (Request request : requests) {
+				request.download(quiet);
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, requests.size()));
+		try {
+			List<Future<?>> tasks = new ArrayList<>(requests.size());
+			for (Request request : requests) {
+				tasks.add(executor.submit(() -> {
+					request.download(quiet);
+					return null;
+				}));
+			}
+
+			Throwable failure = null;
+			for (Future<?> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					} else {
+						failure.addSuppressed(e.getCause());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for downloads");
+				}
+			}
+
+			if (failure != null) {
+				Throwables.throwIfInstanceOf(failure, IOException.class);
+				Throwables.throwIfUnchecked(failure);
+				throw new IOException("Unexpected error downloading", failure);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates a new path in the same directory as the given path with <code>.part</code> on the end of the name
+	 *
+	 * @param file The {@link Path} to produce the part file for
+	 *
+	 * @return The (uncreated) part path for the given path
+	 */
+	private static Path getPartFile(Path file) {
+		return file.resolveSibling(file.getFileName() + ".part");
+	}
+
+	/**
+	 * Creates a new path in the same directory as the given part file with <code>.validator</code> on the end of the name
+	 *
+	 * @param part The part file to produce the validator path for
+	 *
+	 * @return The (uncreated) validator path for the given part file
+	 */
+	private static Path getPartValidatorFile(Path part) {
+		return part.resolveSibling(part.getFileName() + ".validator");
+	}
+
+	/**
+	 * Attempt to load what identifies the version of the file the given part file holds the start of
+	 *
+	 * @param part The part file to load the validator for
+	 *
+	 * @return The validator for the given part file, or <code>null</code> if it doesn't exist
+	 */
+	private static String loadPartValidator(Path part) {
+		Path validatorFile = getPartValidatorFile(part);
+		if (Files.notExists(validatorFile)) return null;
+
+		try {
+			return MoreFiles.asCharSource(validatorFile, StandardCharsets.UTF_8).read();
+		} catch (IOException e) {
+			return null; //Downloading from the start will fix it
 		}
 	}
 
+	/**
+	 * Saves what identifies the version of the file the given part file is holding
+	 *
+	 * @param part The part file to save the validator for
+	 * @param validator The strong ETag or last modified date of the file
+	 *
+	 * @throws IOException If an exception occurs saving the validator
+	 */
+	private static void savePartValidator(Path part, String validator) throws IOException {
+		MoreFiles.asCharSink(getPartValidatorFile(part), StandardCharsets.UTF_8).write(validator);
+	}
+
+	/**
+	 * Delete the given part file along with its validator, if they exist
+	 *
+	 * @param part The part file to delete
+	 *
+	 * @throws IOException If an exception occurs during deletion
+	 */
+	private static void deletePart(Path part) throws IOException {
+		Files.deleteIfExists(getPartValidatorFile(part));
+		Files.deleteIfExists(part);
+	}
+
 	/**
 	 * Creates a new path in the same directory as the given path with <code>.etag</code> on the end of the name
 	 *
@@ -162,7 +584,7 @@ public class DownloadUtil {
 	}
 
 	/**
-	 * Delete the path along with the corresponding ETag, if it exists.
+	 * Delete the path along with the corresponding ETag, checksum stamp and any partial download, if they exist.
 	 *
 	 * @param file The path to delete.
 	 *
@@ -171,5 +593,7 @@ public class DownloadUtil {
 	public static void delete(Path file) throws IOException {
 		Files.deleteIfExists(file);
 		Files.deleteIfExists(getETagFile(file));
+		Files.deleteIfExists(FileUtils.getStampFile(file));
+		deletePart(getPartFile(file));
 	}
 }
\ No newline at end of file
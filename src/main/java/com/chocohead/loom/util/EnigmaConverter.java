@@ -0,0 +1,200 @@
+package com.chocohead.loom.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.system.JkLog;
+
+/**
+ * Converts Enigma mappings into a Tiny and parameter file pair, remembering what each mapping file produced
+ * so only the files which have changed since the last conversion need to be parsed again
+ */
+public class EnigmaConverter {
+	private static final int MAGIC = 0x454E4943; //ENIC
+	private static final int VERSION = 1;
+
+	/** What a single Enigma file converted into */
+	private static final class Entry {
+		final String hash;
+		final String tiny, params;
+
+		Entry(String hash, String tiny, String params) {
+			this.hash = hash;
+			this.tiny = tiny;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * Creates a new path in the same directory as the given path with <code>.enigma</code> on the end of the name
+	 *
+	 * @param tiny The {@link Path} to the Tiny file produced from the conversion
+	 *
+	 * @return The (potentially uncreated) state path for the given path
+	 */
+	public static Path stateFor(Path tiny) {
+		return tiny.resolveSibling(tiny.getFileName() + ".enigma");
+	}
+
+	/**
+	 * Converts the Enigma mappings in the given zip into the given Tiny and parameter files, reusing the output of
+	 * any mapping files which are unchanged since the last conversion into the same place
+	 *
+	 * @param enigma The zip containing the Enigma mapping files
+	 * @param tiny The path to write the converted Tiny mappings to
+	 * @param params The path to write the converted method parameters to
+	 * @param from The namespace the obfuscated names in the Enigma mappings are in
+	 * @param to The namespace the deobfuscated names in the Enigma mappings are in
+	 *
+	 * @return Whether the contents of either the Tiny or parameter file changed
+	 *
+	 * @throws IOException If an exception occurs reading the mappings or writing the output
+	 */
+	public static boolean convert(Path enigma, Path tiny, Path params, String from, String to) throws IOException {
+		Path stateFile = stateFor(tiny);
+		Map<String, Entry> state = Files.exists(tiny) && Files.exists(params) ? readState(stateFile, from, to) : new HashMap<>();
+
+		List<Path> files;
+		List<Entry> entries;
+		Map<String, Entry> nextState = new HashMap<>();
+		int reused = 0;
+		try (JkPathTree tree = JkPathTree.ofZip(enigma)) {
+			try (Stream<Path> stream = tree.andMatching("**.mapping").stream(FileVisitOption.FOLLOW_LINKS)) {
+				files = stream.collect(Collectors.toList());
+			}
+
+			entries = files.parallelStream().map(file -> {
+				String hash = FileUtils.hashSHA1(file);
+
+				Entry last = state.get(file.toString());
+				if (last != null && last.hash.equals(hash)) return last;
+
+				StringWriter tinyOut = new StringWriter();
+				StringWriter paramsOut = new StringWriter();
+				try (TinyWriter writer = new TinyParamWriter(tinyOut, paramsOut)) {
+					EnigmaReader.readEnigmaFile(file, writer);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error converting " + file, e);
+				}
+
+				return new Entry(hash, tinyOut.toString(), paramsOut.toString());
+			}).collect(Collectors.toList());
+
+			for (int i = 0; i < files.size(); i++) {
+				Entry entry = entries.get(i);
+				if (state.get(files.get(i).toString()) == entry) reused++;
+				nextState.put(files.get(i).toString(), entry);
+			}
+
+			if (reused == entries.size() && reused == state.size()) {
+				JkLog.trace("All " + reused + " Enigma files unchanged since last conversion");
+				//Nothing has changed, but the outputs still want to appear newer than the mappings
+				FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+				Files.setLastModifiedTime(tiny, now);
+				Files.setLastModifiedTime(params, now);
+				return false;
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		JkLog.info("Converted " + (entries.size() - reused) + " changed Enigma files, reused " + reused + " unchanged");
+
+		FileUtils.writeTextAtomically(tiny, writer -> {
+			writer.write("v1\t");
+			writer.write(from);
+			writer.write('\t');
+			writer.write(to);
+			writer.write('\n');
+
+			for (Entry entry : entries) {
+				writer.write(entry.tiny);
+			}
+		});
+		FileUtils.writeTextAtomically(params, writer -> {
+			for (Entry entry : entries) {
+				writer.write(entry.params);
+			}
+		});
+		//Only record what was converted once it has definitely been written
+		writeState(stateFile, from, to, files, nextState);
+
+		return true;
+	}
+
+	private static Map<String, Entry> readState(Path file, String from, String to) {
+		Map<String, Entry> state = new HashMap<>();
+		if (Files.notExists(file)) return state;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return state;
+			if (!from.equals(in.readUTF()) || !to.equals(in.readUTF())) return state;
+
+			for (int i = 0, count = in.readInt(); i < count; i++) {
+				String path = in.readUTF();
+				String hash = in.readUTF();
+				String tiny = readString(in);
+				String params = readString(in);
+
+				state.put(path, new Entry(hash, tiny, params));
+			}
+		} catch (IOException e) {
+			JkLog.warn("Unable to read Enigma conversion state from " + file + ", converting everything: " + e);
+			state.clear();
+		}
+
+		return state;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeState(Path file, String from, String to, List<Path> order, Map<String, Entry> state) {
+		try {
+			FileUtils.writeDataAtomically(file, out -> {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(from);
+				out.writeUTF(to);
+
+				out.writeInt(state.size());
+				for (Path path : order) {
+					Entry entry = Objects.requireNonNull(state.get(path.toString()));
+
+					out.writeUTF(path.toString());
+					out.writeUTF(entry.hash);
+					writeString(out, entry.tiny);
+					writeString(out, entry.params);
+				}
+			});
+		} catch (IOException e) {
+			//Not the end of the world, the next conversion will just have to do everything
+			JkLog.warn("Unable to save Enigma conversion state to " + file + ": " + e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+}
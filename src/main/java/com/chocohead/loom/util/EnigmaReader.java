@@ -1,14 +1,12 @@
 package com.chocohead.loom.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
-import java.util.Collections;
-import java.util.Queue;
+import java.util.Arrays;
 import java.util.stream.Stream;
 
 import dev.jeka.core.api.file.JkPathTree;
@@ -26,200 +24,317 @@ class EnigmaReader {
 		}
 	}
 
-	private static void readEnigmaFile(Path file, MappingProcessor processor) {
-		try (BufferedReader reader = Files.newBufferedReader(file)) {
-			String line;
-			Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
-			Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
+	/** A single entry on the context stack, reused for whichever entry is at the same depth later */
+	private static final class Context {
+		enum Kind {
+			CLASS, METHOD, FIELD, ARG, VAR;
+		}
+
+		Kind kind;
+		/** The obfuscated name and descriptor (if a member) of the entry */
+		String name, desc;
+		/** The deobfuscated name of the entry, or the obfuscated name if it doesn't have one */
+		String namedName;
+		/** The index of the entry if it is an argument or variable */
+		int index;
+
+		Context set(Kind kind, String name, String desc, String namedName, int index) {
+			this.kind = kind;
+			this.name = name;
+			this.desc = desc;
+			this.namedName = namedName;
+			this.index = index;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return kind + "[" + name + (desc != null ? desc : "") + " => " + namedName + ']';
+		}
+	}
+
+	/** Reads lines into a reusable buffer, splitting them into space separated columns without copying them out */
+	private static final class LineTokenizer {
+		private static final int MAX_COLUMNS = 5; //More than any valid line has, but enough to know there are too many
+		private final Reader reader;
+		private char[] buffer = new char[8192];
+		private int filled, next;
+		private boolean eof;
+
+		char[] line;
+		int lineStart, lineEnd, indent, columns;
+		final int[] columnStart = new int[MAX_COLUMNS], columnEnd = new int[MAX_COLUMNS];
+
+		LineTokenizer(Reader reader) {
+			this.reader = reader;
+		}
+
+		boolean nextLine() throws IOException {
+			while (true) {
+				for (int i = next; i < filled; i++) {
+					if (buffer[i] == '\n') {
+						setLine(next, i > next && buffer[i - 1] == '\r' ? i - 1 : i);
+						next = i + 1;
+						return true;
+					}
+				}
+
+				if (eof) {
+					if (next < filled) {//Last line without a new line on the end
+						setLine(next, buffer[filled - 1] == '\r' ? filled - 1 : filled);
+						next = filled;
+						return true;
+					}
+
+					return false;
+				}
+
+				//Shuffle the partial line down to the start, growing if the line is longer than the whole buffer
+				System.arraycopy(buffer, next, buffer, 0, filled -= next);
+				next = 0;
+				if (filled == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+				int read = reader.read(buffer, filled, buffer.length - filled);
+				if (read < 0) {
+					eof = true;
+				} else {
+					filled += read;
+				}
+			}
+		}
+
+		private void setLine(int start, int end) {
+			line = buffer;
+			lineStart = start;
+			lineEnd = end;
+
+			indent = 0;
+			while (start + indent < end && buffer[start + indent] == '\t') indent++;
+
+			//Mirror String#split(" "), which keeps empty columns between spaces but drops any trailing ones
+			columns = 0;
+			for (int column = start + indent, i = column; i <= end; i++) {
+				if (i == end || buffer[i] == ' ') {
+					if (columns < MAX_COLUMNS) {
+						columnStart[columns] = column;
+						columnEnd[columns] = i;
+					}
+					columns++;
+					column = i + 1;
+				}
+			}
+			while (columns > 0 && columns <= MAX_COLUMNS && columnStart[columns - 1] == columnEnd[columns - 1]) columns--;
+		}
+
+		boolean isEmpty() {
+			return lineStart == lineEnd;
+		}
+
+		boolean columnIs(int column, String value) {
+			int length = columnEnd[column] - columnStart[column];
+			if (length != value.length()) return false;
+
+			for (int i = 0; i < length; i++) {
+				if (line[columnStart[column] + i] != value.charAt(i)) return false;
+			}
+
+			return true;
+		}
+
+		char firstChar(int column) {
+			return columnStart[column] < columnEnd[column] ? line[columnStart[column]] : '\0';
+		}
+
+		String column(int column) {
+			return new String(line, columnStart[column], columnEnd[column] - columnStart[column]);
+		}
+
+		int columnIndexOf(int column, char c, boolean last) {
+			if (last) {
+				for (int i = columnEnd[column] - 1; i >= columnStart[column]; i--) {
+					if (line[i] == c) return i - columnStart[column];
+				}
+			} else {
+				for (int i = columnStart[column]; i < columnEnd[column]; i++) {
+					if (line[i] == c) return i - columnStart[column];
+				}
+			}
+
+			return -1;
+		}
+
+		int columnAsInt(int column) throws IOException {
+			int start = columnStart[column], end = columnEnd[column];
+			if (start == end) throw new IOException("Invalid enigma line (missing index): " + this);
+
+			int value = 0;
+			for (int i = start; i < end; i++) {
+				char c = line[i];
+				if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) throw new IOException("Invalid enigma line (invalid index): " + this);
+				value = value * 10 + (c - '0');
+			}
+
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return new String(line, lineStart + indent, lineEnd - lineStart - indent);
+		}
+	}
+
+	static void readEnigmaFile(Path file, MappingProcessor processor) {
+		try (Reader reader = Files.newBufferedReader(file)) {
+			LineTokenizer line = new LineTokenizer(reader);
+			Context[] contextStack = new Context[8];
 			int indent = 0;
 			StringBuilder commentBuffer = new StringBuilder();
 
-			while ((line = reader.readLine()) != null) {
+			while (line.nextLine()) {
 				if (line.isEmpty()) continue;
 
-				int newIndent = 0;
-				while (newIndent < line.length() && line.charAt(newIndent) == '\t') newIndent++;
-				int indentChange = newIndent - indent;
+				int indentChange = line.indent - indent;
 
 				if (indentChange != 0) {
 					if (commentBuffer.length() > 0) {
-						buildComment(commentBuffer, contextStack, processor);
+						buildComment(commentBuffer, contextStack, indent, processor);
 						commentBuffer.setLength(0);
 					}
 
 					if (indentChange < 0) {
-						for (int i = 0; i < -indentChange; i++) {
-							contextStack.remove();
-							contextNamedStack.remove();
-						}
-
-						indent = newIndent;
+						indent = line.indent;
 					} else {
 						throw new IOException("Invalid enigma line (invalid indentation change): " + line);
 					}
 				}
 
-				line = line.substring(indent);
-				String[] parts = line.split(" ");
-				if (parts.length == 0) continue; //Line only consisting of tabs
-
-				if (commentBuffer.length() > 0 && !"COMMENT".equals(parts[0])) {
-					buildComment(commentBuffer, contextStack, processor);
+				boolean isComment = line.columns > 0 && line.columnIs(0, "COMMENT");
+				if (commentBuffer.length() > 0 && !isComment) {
+					buildComment(commentBuffer, contextStack, indent, processor);
 					commentBuffer.setLength(0);
 				}
 
-				switch (parts[0]) {
-				case "CLASS": {
-					if (parts.length < 2 || parts.length > 3) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
-					String obfName = parts[1];
+				if (indent == contextStack.length) contextStack = Arrays.copyOf(contextStack, indent * 2);
+				Context context = indent > 0 ? contextStack[indent - 1] : null;
+				Context next = contextStack[indent] != null ? contextStack[indent] : (contextStack[indent] = new Context());
+
+				if (isComment) {
+					if (context == null) throw new IOException("Invalid enigma line (comment without class/member): " + line);
+					if (commentBuffer.length() > 0) commentBuffer.append('\n');
+
+					if (line.columns > 1) {
+						parseComment(line.line, line.lineStart + line.indent + "COMMENT".length() + 1, line.lineEnd, commentBuffer);
+					}
+				} else if (line.columns > 0 && line.columnIs(0, "CLASS")) {
+					if (line.columns < 2 || line.columns > 3) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
+
+					String obfName;
 					if (indent >= 1) {//Inner classes have certain inconsistencies...
-						//System.out.println("Passed inner class: " + obfName + " (" + obfName.indexOf('/') + ", " + obfName.indexOf('$') + ')');
-						if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
-							int split = obfName.lastIndexOf('$');
+						if (context == null || context.kind != Context.Kind.CLASS) throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+
+						if (line.columnIndexOf(1, '/', false) > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
+							int split = line.columnIndexOf(1, '$', true);
 							assert split > 2; //Should be at least a/b$c
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName.substring(split + 1);
-						} else if (obfName.indexOf('$') < 1) {//Some inner classes don't carry any outer name at all
-							assert obfName.indexOf('$') == -1 && obfName.indexOf('/') == -1;
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName;
+							obfName = context.name + '$' + new String(line.line, line.columnStart[1] + split + 1, line.columnEnd[1] - line.columnStart[1] - split - 1);
+						} else if (line.columnIndexOf(1, '$', false) < 1) {//Some inner classes don't carry any outer name at all
+							obfName = context.name + '$' + line.column(1);
+						} else {
+							obfName = line.column(1);
 						}
+					} else {
+						obfName = line.column(1);
 					}
-					contextStack.add('C' + obfName);
-					indent++;
-					if (parts.length == 3) {
+
+					if (line.columns == 3) {
 						String className;
-						if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
-							String context = contextNamedStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						if (indent >= 1) {//If we're an indent in, we're an inner class so want the outer classes's name
 							//Named inner classes shouldn't ever carry the outer class's package + name
-							assert !parts[2].startsWith(context.substring(1)): "Pre-prefixed enigma class name: " + parts[2];
-							className = context.substring(1) + '$' + parts[2];
+							assert !line.column(2).startsWith(context.namedName): "Pre-prefixed enigma class name: " + line.column(2);
+							className = context.namedName + '$' + line.column(2);
 						} else {
-							className = parts[2];
+							className = line.column(2);
 						}
-						contextNamedStack.add('C' + className);
+
+						next.set(Context.Kind.CLASS, obfName, null, className, -1);
 						processor.acceptClass(obfName, className);
 					} else {
-						contextNamedStack.add('C' + obfName); //No name, but we still need something to avoid underflowing
+						next.set(Context.Kind.CLASS, obfName, null, obfName, -1); //No name, but we still need something for inner classes
 					}
-					break;
-				}
-
-				case "METHOD": {
-					if (parts.length < 3 || parts.length > 4) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
-					if (!parts[parts.length - 1].startsWith("(")) throw new IOException("Invalid enigma line (invalid method desc): " + line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (method without class): " + line);
-					contextStack.add('M' + parts[1] + parts[parts.length - 1]);
 					indent++;
-					if (parts.length == 4) {
-						processor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek(), parts[2]);
-						contextNamedStack.add('M' + parts[2]);
+				} else if (line.columns > 0 && line.columnIs(0, "METHOD")) {
+					if (line.columns < 3 || line.columns > 4) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
+					if (line.firstChar(line.columns - 1) != '(') throw new IOException("Invalid enigma line (invalid method desc): " + line);
+					if (context == null || context.kind != Context.Kind.CLASS) throw new IOException("Invalid enigma line (method without class): " + line);
+
+					String name = line.column(1);
+					String desc = line.column(line.columns - 1);
+					if (line.columns == 4) {
+						String namedName = line.column(2);
+						next.set(Context.Kind.METHOD, name, desc, namedName, -1);
+						processor.acceptMethod(context.name, name, desc, context.namedName, namedName);
 					} else {
-						contextNamedStack.add('M' + parts[1]); //No name, but we still need something to avoid underflowing
+						next.set(Context.Kind.METHOD, name, desc, name, -1);
 					}
-					break;
-				}
-
-				case "ARG":
-				case "VAR": {
-					if (parts.length < 2 || parts.length > 3) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
-					String methodContext = contextStack.poll();
-					if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("Invalid enigma line (arg without method): " + line);
-					String classContext = contextStack.peek();
-					if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException("Missing method owner context from stack");
-					contextStack.add(methodContext);
-
-					int index = Integer.parseInt(parts[1]);
-					boolean isArg = "ARG".equals(parts[0]);
+					indent++;
+				} else if (line.columns > 0 && (line.columnIs(0, "ARG") || line.columnIs(0, "VAR"))) {
+					if (line.columns < 2 || line.columns > 3) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
+					if (context == null || context.kind != Context.Kind.METHOD) throw new IOException("Invalid enigma line (arg without method): " + line);
+					Context classContext = contextStack[indent - 2];
+					if (classContext == null || classContext.kind != Context.Kind.CLASS) throw new IllegalStateException("Missing method owner context from stack");
 
-					if (parts.length == 3) {
-						int methodDescStart = methodContext.indexOf('(');
-						assert methodDescStart != -1;
+					int index = line.columnAsInt(1);
+					boolean isArg = line.columnIs(0, "ARG");
 
-						String srcClsName = classContext.substring(1);
-						String srcMethodName = methodContext.substring(1, methodDescStart);
-						String srcMethodDesc = methodContext.substring(methodDescStart);
-						String name = parts[2];
+					if (line.columns == 3) {
+						String name = line.column(2);
 
-						String method = contextNamedStack.poll();
 						if (isArg) {
-							processor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, contextNamedStack.peek(), index, name);
+							processor.acceptMethodArg(classContext.name, context.name, context.desc, classContext.namedName, index, name);
+						} else if (LEGACY) {
+							processor.acceptMethodVar(classContext.name, context.name, context.desc, classContext.namedName, -1, index, name);
 						} else {
-							int lvIndex;
-							if (LEGACY) {
-								lvIndex = index;
-								index = -1;
-							} else {
-								lvIndex = -1;
-							}
-							processor.acceptMethodVar(srcClsName, srcMethodName, srcMethodDesc, contextNamedStack.peek(), index, lvIndex, name);
+							processor.acceptMethodVar(classContext.name, context.name, context.desc, classContext.namedName, index, -1, name);
 						}
-						contextNamedStack.add(method);
 
-						contextNamedStack.add((isArg ? 'A' : 'V') + name);
+						next.set(isArg ? Context.Kind.ARG : Context.Kind.VAR, null, null, name, index);
 					} else {
-						contextNamedStack.add(isArg ? "A" : "V"); //No name, but we still need something to avoid underflowing
+						next.set(isArg ? Context.Kind.ARG : Context.Kind.VAR, null, null, null, index);
 					}
-
 					indent++;
-					contextStack.add((isArg ? "A" : "V") + index);
-					break;
-				}
-
-				case "FIELD": {
-					if (parts.length < 3 || parts.length > 4) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (field without class): " + line);
-
-					assert parts[1].indexOf('#') < 0;
-					assert parts[parts.length - 1].indexOf('#') < 0;
-					contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
-
-					indent++;
-					if (parts.length == 4) {
-						processor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek(), parts[2]);
-						contextNamedStack.add('F' + parts[2]);
+				} else if (line.columns > 0 && line.columnIs(0, "FIELD")) {
+					if (line.columns < 3 || line.columns > 4) throw new IOException("Invalid enigma line (missing/extra columns): " + line);
+					if (context == null || context.kind != Context.Kind.CLASS) throw new IOException("Invalid enigma line (field without class): " + line);
+
+					String name = line.column(1);
+					String desc = line.column(line.columns - 1);
+					if (line.columns == 4) {
+						String namedName = line.column(2);
+						next.set(Context.Kind.FIELD, name, desc, namedName, -1);
+						processor.acceptField(context.name, name, desc, context.namedName, namedName);
 					} else {
-						contextNamedStack.add('F' + parts[1]); //No name, but we still need something to avoid underflowing
+						next.set(Context.Kind.FIELD, name, desc, name, -1);
 					}
-					break;
-				}
-
-				case "COMMENT":
-					if (contextStack.isEmpty()) throw new IOException("Invalid enigma line (comment without class/member): " + line);
-					if (commentBuffer.length() > 0) commentBuffer.append('\n');
-
-					if (parts.length > 1) {
-						parseComment(line, "COMMENT".length() + 1, commentBuffer);
-					}
-					break;
-
-				default:
+					indent++;
+				} else {
 					throw new IOException("Invalid enigma line (unknown type): " + line);
 				}
 			}
 
 			if (commentBuffer.length() > 0) {//Remember to write what ever is left in the comment buffer
-				buildComment(commentBuffer, contextStack, processor);
+				buildComment(commentBuffer, contextStack, indent, processor);
 			}
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
-	private static void parseComment(String line, int offset, StringBuilder out) throws IOException {
-		int end = line.length();
-
+	private static void parseComment(char[] line, int offset, int end, StringBuilder out) throws IOException {
 		int pos;
-		while ((pos = line.indexOf('\\', offset)) >= 0) {
-			if (pos > offset) out.append(line, offset, pos - 1);
+		while ((pos = indexOf(line, offset, end, '\\')) >= 0) {
+			if (pos > offset) out.append(line, offset, pos - offset);
 			if (++pos == end) throw new IOException("Invalid escape sequence: \\<eol>");
 
-			char letter = line.charAt(pos);
+			char letter = line[pos];
 			int index = ESCAPED.indexOf(letter);
 			if (index < 0) throw new IOException("Invalid escape sequence: \\" + letter);
 			out.append(TO_ESCAPE.charAt(index));
@@ -227,108 +342,61 @@ class EnigmaReader {
 			offset = pos + 1;
 		}
 
-		if (offset < end) out.append(line, offset, end);
+		if (offset < end) out.append(line, offset, end - offset);
 	}
 
-	private static void buildComment(CharSequence comment, Queue<String> contextStack, MappingProcessor processor) {
-		assert !contextStack.isEmpty(): "Tried to build comment with no context?";
-		String text = comment.toString();
-
-		switch (contextStack.peek().charAt(0)) {
-		case 'C': {
-			String name = contextStack.peek();
-			processor.acceptClassComment(name, text);
-			break;
+	private static int indexOf(char[] line, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (line[i] == c) return i;
 		}
 
-		case 'M': {
-			String methodContext = contextStack.poll();
-			assert methodContext != null; //poll should work just as well as peek
-
-			String classContext = contextStack.peek();
-			if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException("Missing method owner context from stack");
-
-			int methodDescStart = methodContext.indexOf('(');
-			assert methodDescStart > 1;
+		return -1;
+	}
 
-			String className = classContext.substring(1);
-			String methodName = methodContext.substring(1, methodDescStart);
-			String methodDesc = methodContext.substring(methodDescStart);
+	private static void buildComment(CharSequence comment, Context[] contextStack, int depth, MappingProcessor processor) {
+		assert depth > 0: "Tried to build comment with no context?";
+		String text = comment.toString();
+		Context context = contextStack[depth - 1];
 
-			processor.acceptFieldComment(className, methodName, methodDesc, text);
-			contextStack.add(methodContext); //Put this back again
+		switch (context.kind) {
+		case CLASS:
+			processor.acceptClassComment(context.name, text);
 			break;
-		}
-
-		case 'A': {
-			String argContext = contextStack.poll();
-			assert argContext != null; //poll should work just as well as peek
-
-			String methodContext = contextStack.poll();
-			if (methodContext == null || methodContext.charAt(0) != 'M') throw new IllegalStateException("Missing argument owner context from stack");
 
-			String classContext = contextStack.peek();
-			if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException("Missing method owner context from stack");
+		case METHOD: {
+			Context classContext = depth > 1 ? contextStack[depth - 2] : null;
+			if (classContext == null || classContext.kind != Context.Kind.CLASS) throw new IllegalStateException("Missing method owner context from stack");
 
-			int methodDescStart = methodContext.indexOf('(');
-			assert methodDescStart > 1;
-
-			String className = classContext.substring(1);
-			String methodName = methodContext.substring(1, methodDescStart);
-			String methodDesc = methodContext.substring(methodDescStart);
-			int lvIndex = Integer.parseInt(argContext.substring(1));
-
-			processor.acceptMethodArgComment(className, methodName, methodDesc, lvIndex, text);
-			contextStack.add(methodContext); //Put this back again
-			contextStack.add(argContext);
+			processor.acceptMethodComment(classContext.name, context.name, context.desc, text);
 			break;
 		}
 
-		case 'V': {
-			String varContext = contextStack.poll();
-			assert varContext != null; //poll should work just as well as peek
-
-			String methodContext = contextStack.poll();
-			if (methodContext == null || methodContext.charAt(0) != 'M') throw new IllegalStateException("Missing variable owner context from stack");
+		case ARG:
+		case VAR: {
+			Context methodContext = depth > 1 ? contextStack[depth - 2] : null;
+			if (methodContext == null || methodContext.kind != Context.Kind.METHOD) throw new IllegalStateException("Missing " + (context.kind == Context.Kind.ARG ? "argument" : "variable") + " owner context from stack");
 
-			String classContext = contextStack.peek();
-			if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException("Missing method owner context from stack");
+			Context classContext = depth > 2 ? contextStack[depth - 3] : null;
+			if (classContext == null || classContext.kind != Context.Kind.CLASS) throw new IllegalStateException("Missing method owner context from stack");
 
-			int methodDescStart = methodContext.indexOf('(');
-			assert methodDescStart > 1;
-
-			String className = classContext.substring(1);
-			String methodName = methodContext.substring(1, methodDescStart);
-			String methodDesc = methodContext.substring(methodDescStart);
-			int lvIndex = Integer.parseInt(varContext.substring(1));
-
-			processor.acceptMethodVarComment(className, methodName, methodDesc, LEGACY ? -1 : lvIndex, LEGACY ? lvIndex : -1, text);
-			contextStack.add(methodContext); //Put this back again
-			contextStack.add(varContext);
+			if (context.kind == Context.Kind.ARG) {
+				processor.acceptMethodArgComment(classContext.name, methodContext.name, methodContext.desc, context.index, text);
+			} else {
+				processor.acceptMethodVarComment(classContext.name, methodContext.name, methodContext.desc, LEGACY ? -1 : context.index, LEGACY ? context.index : -1, text);
+			}
 			break;
 		}
 
-		case 'F': {
-			String fieldContext = contextStack.poll();
-			assert fieldContext != null; //poll should work just as well as peek
-
-			String classContext = contextStack.peek();
-			if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException("Missing field owner context from stack");
-
-			int fieldDescStart = fieldContext.indexOf('#');
-			assert fieldDescStart > 1;
-
-			String className = classContext.substring(1);
-			String fieldName = fieldContext.substring(1, fieldDescStart);
-			String fieldDesc = fieldContext.substring(fieldDescStart + 1);
+		case FIELD: {
+			Context classContext = depth > 1 ? contextStack[depth - 2] : null;
+			if (classContext == null || classContext.kind != Context.Kind.CLASS) throw new IllegalStateException("Missing field owner context from stack");
 
-			processor.acceptFieldComment(className, fieldName, fieldDesc, text);
-			contextStack.add(fieldContext); //Put this back again
+			processor.acceptFieldComment(classContext.name, context.name, context.desc, text);
 			break;
 		}
 
 		default:
-			throw new IllegalStateException("Unexpected (non-empty) context stack: " + contextStack);
+			throw new IllegalStateException("Unexpected context on stack: " + context);
 		}
 	}
-}
\ No newline at end of file
+}
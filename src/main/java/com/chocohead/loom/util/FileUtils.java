@@ -1,18 +1,34 @@
 package com.chocohead.loom.util;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import com.google.common.io.MoreFiles;
 
 public class FileUtils {
+	/** An {@link IOException} throwing {@link java.util.function.Consumer Consumer}{@code <}T{@code >} */
+	public interface IOConsumer<T> {
+		void accept(T to) throws IOException;
+	}
+
 	/**
 	 * Checks whether the contents of the given {@link Path} matches the given SHA1 checksum
 	 *
+	 * <p>A successful check is stamped beside the path, so later checks only need to hash
+	 * the path again if its size, last modified time or identity has changed since</p>
+	 *
 	 * @param file The path to have the checksum calculated from
 	 * @param checksum The expected checksum the path should have
 	 *
@@ -23,6 +39,135 @@ public class FileUtils {
 			return false;
 		}
 
+		String stamp = makeStamp(file, checksum);
+		if (stamp != null && stamp.equals(readStamp(getStampFile(file)))) {
+			return true; //Nothing has changed since it was last checked
+		}
+
+		if (!checksum.equals(hashSHA1(file))) {
+			return false;
+		}
+
+		writeStamp(getStampFile(file), stamp);
+		return true;
+	}
+
+	/**
+	 * Records that the given {@link Path} is known to have the given SHA1 checksum, such as after it was checked whilst being written
+	 *
+	 * @param file The path which has the given checksum
+	 * @param checksum The checksum the path has
+	 */
+	public static void stampSHA1(Path file, String checksum) {
+		writeStamp(getStampFile(file), makeStamp(file, checksum));
+	}
+
+	/**
+	 * Calculates the SHA1 checksum of the given {@link Path} as {@link #hashSHA1(Path)} does, unless it is stamped
+	 * with a checksum and its size, last modified time and identity are all unchanged since
+	 *
+	 * @param file The path to have the checksum calculated from
+	 *
+	 * @return The lower case hex string of the path's checksum
+	 */
+	public static String stampedSHA1(Path file) {
+		return hashWithStamp(file, getStampFile(file));
+	}
+
+	/**
+	 * Calculates the SHA1 checksum of the given {@link Path} as {@link #stampedSHA1(Path)} does, but keeping the stamp in the given directory
+	 * rather than beside the path, for paths which belong to something else (such as a project's own libraries or a shared dependency cache)
+	 *
+	 * @param file The path to have the checksum calculated from
+	 * @param stampDir The directory to keep the stamp in, named after the path's location
+	 *
+	 * @return The lower case hex string of the path's checksum
+	 */
+	public static String stampedSHA1(Path file, Path stampDir) {
+		@SuppressWarnings("deprecation")
+		String name = Hashing.sha1().hashString(file.toAbsolutePath().normalize().toString(), StandardCharsets.UTF_8).toString();
+
+		try {
+			Files.createDirectories(stampDir);
+		} catch (IOException e) {
+			return hashSHA1(file); //Can't be stamped, but it can still be hashed
+		}
+
+		return hashWithStamp(file, stampDir.resolve(name + ".sha1stamp"));
+	}
+
+	private static String hashWithStamp(Path file, Path stampFile) {
+		String current = makeStamp(file, "");
+		String stamp = readStamp(stampFile);
+
+		if (current != null && stamp != null && stamp.length() > current.length() && stamp.startsWith(current)) {
+			String checksum = stamp.substring(current.length());
+			if (checksum.indexOf('\n') < 0) return checksum; //Nothing has changed since it was last hashed
+		}
+
+		String checksum = hashSHA1(file);
+		writeStamp(stampFile, makeStamp(file, checksum));
+		return checksum;
+	}
+
+	/**
+	 * Creates a new path in the same directory as the given path with <code>.sha1stamp</code> on the end of the name
+	 *
+	 * @param file The {@link Path} to produce the stamp for
+	 *
+	 * @return The (uncreated) stamp path for the given path
+	 */
+	static Path getStampFile(Path file) {
+		return file.resolveSibling(file.getFileName() + ".sha1stamp");
+	}
+
+	/**
+	 * Describes the given {@link Path} as it is now, along with the given checksum it is meant to have
+	 *
+	 * @param file The path to describe
+	 * @param checksum The checksum the path is meant to have
+	 *
+	 * @return The stamp for the path, or <code>null</code> if the path's attributes couldn't be read
+	 */
+	private static String makeStamp(Path file, String checksum) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+			return file.toAbsolutePath().normalize() + "\n" + attributes.size() + '\n' + attributes.lastModifiedTime().toMillis() + '\n' + attributes.fileKey() + '\n' + checksum;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static String readStamp(Path stampFile) {
+		if (Files.notExists(stampFile)) return null;
+
+		try {
+			return MoreFiles.asCharSource(stampFile, StandardCharsets.UTF_8).read();
+		} catch (IOException e) {
+			return null; //Hashing again will fix it
+		}
+	}
+
+	private static void writeStamp(Path stampFile, String stamp) {
+		if (stamp == null) return;
+
+		try {
+			MoreFiles.asCharSink(stampFile, StandardCharsets.UTF_8).write(stamp);
+		} catch (IOException e) {
+			//Not the end of the world, the file will just be hashed again next time
+			deleteAfterCrash(stampFile, e);
+		}
+	}
+
+	/**
+	 * Calculates the SHA1 checksum of the contents of the given {@link Path}
+	 *
+	 * @param file The path to have the checksum calculated from
+	 *
+	 * @return The lower case hex string of the path's checksum
+	 */
+	public static String hashSHA1(Path file) {
 		try {
 			@SuppressWarnings("deprecation")
 			HashCode hash = MoreFiles.asByteSource(file).hash(Hashing.sha1());
@@ -32,12 +177,81 @@ public class FileUtils {
 				builder.append(Integer.toString((hashBytes & 0xFF) + 0x100, 16).substring(1));
 			}
 
-			return checksum.contentEquals(builder);
+			return builder.toString();
 		} catch (IOException e) {
 			throw new RuntimeException("Unexpected error calculating file hash", e);
 		}
 	}
 
+	/**
+	 * Moves the given {@link Path} over the destination, atomically if the file system supports it
+	 *
+	 * @param from The path to be moved
+	 * @param to The path to be moved to, replacing it if it already exists
+	 *
+	 * @throws IOException If an exception occurs during the move
+	 */
+	public static void moveAtomically(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the given file via a temporary file beside it, so nothing reading it ever sees it half written
+	 *
+	 * @param file The path to be written, replacing it if it already exists
+	 * @param writer The writer of the temporary file, which is deleted if it throws
+	 *
+	 * @throws IOException If an exception occurs writing or moving the temporary file
+	 */
+	public static void writeAtomically(Path file, IOConsumer<Path> writer) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			writer.accept(temp);
+
+			moveAtomically(temp, file);
+		} catch (IOException | RuntimeException e) {
+			deleteAfterCrash(temp, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the given file as text using {@link #writeAtomically(Path, IOConsumer)}
+	 *
+	 * @param file The path to be written, replacing it if it already exists
+	 * @param writer The writer of the text, which is closed once it returns
+	 *
+	 * @throws IOException If an exception occurs writing the file
+	 */
+	public static void writeTextAtomically(Path file, IOConsumer<Writer> writer) throws IOException {
+		writeAtomically(file, temp -> {
+			try (Writer out = Files.newBufferedWriter(temp)) {
+				writer.accept(out);
+			}
+		});
+	}
+
+	/**
+	 * Writes the given file as binary data using {@link #writeAtomically(Path, IOConsumer)}
+	 *
+	 * @param file The path to be written, replacing it if it already exists
+	 * @param writer The writer of the data, which is closed once it returns
+	 *
+	 * @throws IOException If an exception occurs writing the file
+	 */
+	public static void writeDataAtomically(Path file, IOConsumer<DataOutputStream> writer) throws IOException {
+		writeAtomically(file, temp -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+				writer.accept(out);
+			}
+		});
+	}
+
 	/**
 	 * Ensures the given {@link Path} is deleted after the given exception is thrown using {@link Files#deleteIfExists(Path)}
 	 *
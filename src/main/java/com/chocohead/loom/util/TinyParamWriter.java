@@ -23,31 +23,16 @@ public class TinyParamWriter extends TinyWriter {
 		this.parameters = Files.newBufferedWriter(parameters, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
 	}
 
+	public TinyParamWriter(Writer mappings, Writer parameters) {
+		super(mappings);
+
+		this.parameters = parameters;
+	}
+
 	@Override
 	public void acceptMethodArg(String className, String methodName, String methodDesc, String dstClassName, int argIndex, String argName) {
 		if (currentMethod != null && !currentMethod.equals(dstClassName + '/' + methodName + methodDesc)) {
-			assert !currentMethodArgs.isEmpty();
-
-			try {
-				writer.write(currentMethod);
-				writer.write('\n');
-				for (int i = currentMethodArgs.size() - 1; i >= 0; i--) {
-					String arg = currentMethodArgs.get(i);
-
-					if (arg != null) {
-						writer.write('\t');
-						writer.write(Integer.toString(i));
-						writer.write(':');
-						writer.write(' ');
-						writer.write(arg);
-						writer.write('\n');
-					}
-				}
-			} catch (IOException e) {
-				throw new UncheckedIOException("Error writing tiny method", e);
-			}
-
-			currentMethodArgs.clear();
+			writeMethod();
 		}
 
 		assert currentMethodArgs.isEmpty() || (dstClassName + '/' + methodName + methodDesc).equals(currentMethod);
@@ -58,8 +43,36 @@ public class TinyParamWriter extends TinyWriter {
 		assert last == null;
 	}
 
+	private void writeMethod() {
+		assert !currentMethodArgs.isEmpty();
+
+		try {
+			parameters.write(currentMethod);
+			parameters.write('\n');
+			for (int i = currentMethodArgs.size() - 1; i >= 0; i--) {
+				String arg = currentMethodArgs.get(i);
+
+				if (arg != null) {
+					parameters.write('\t');
+					parameters.write(Integer.toString(i));
+					parameters.write(':');
+					parameters.write(' ');
+					parameters.write(arg);
+					parameters.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing tiny method", e);
+		}
+
+		currentMethodArgs.clear();
+		currentMethod = null;
+	}
+
 	@Override
 	public void flush() throws IOException {
+		if (currentMethod != null) writeMethod();
+
 		try {
 			super.flush();
 		} finally {
@@ -70,9 +83,13 @@ public class TinyParamWriter extends TinyWriter {
 	@Override
 	public void close() throws IOException {
 		try {
-			super.close();
+			if (currentMethod != null) writeMethod();
 		} finally {
-			parameters.close();
+			try {
+				super.close();
+			} finally {
+				parameters.close();
+			}
 		}
 	}
 }
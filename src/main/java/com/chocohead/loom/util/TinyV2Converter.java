@@ -0,0 +1,237 @@
+package com.chocohead.loom.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts Tiny v2 mappings into Tiny v1 as a single pass over the text, copying the class, field and method
+ * lines straight across whilst skipping over comments, parameters, locals and properties without parsing them.
+ *
+ * <p>Text can be {@link #feed(char[], int, int) fed in} a buffer at a time, with whatever partial line is left over
+ * being passed in again at the start of the next buffer, so conversion can be resumed as more text becomes available.
+ */
+public class TinyV2Converter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String TO_ESCAPE = "\\\n\r\0\t";
+	private static final String ESCAPED = "\\nr0t";
+
+	private final Writer out;
+	/** The name of the current class in the first namespace, needed as the owner of each member */
+	private char[] owner = new char[128];
+	private int ownerLength = -1;
+	private boolean seenHeader, escapedNames;
+
+	public TinyV2Converter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Converts the Tiny v2 file at the given {@link Path} into a Tiny v1 file at {@code mappings/mappings.tiny} within the given jar
+	 *
+	 * @param tiny The Tiny v2 file to convert
+	 * @param jar The jar to write the converted file into, replacing it if it already exists
+	 *
+	 * @throws IOException If an exception occurs reading or writing the mappings
+	 */
+	public static void toJar(Path tiny, Path jar) throws IOException {
+		FileUtils.writeAtomically(jar, temp -> {
+			try (Reader in = Files.newBufferedReader(tiny, StandardCharsets.UTF_8);
+					ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(temp))) {
+				zip.putNextEntry(new ZipEntry("mappings/"));
+				zip.closeEntry();
+				zip.putNextEntry(new ZipEntry("mappings/mappings.tiny"));
+
+				Writer out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), BUFFER_SIZE);
+				convert(in, out);
+				out.flush(); //Closing the writer would close the zip before the entry is finished
+
+				zip.closeEntry();
+			}
+		});
+	}
+
+	/**
+	 * Converts the Tiny v2 text from the given {@link Reader} into Tiny v1 to the given {@link Writer}
+	 *
+	 * @param in The Tiny v2 mappings to read
+	 * @param out The destination for the Tiny v1 mappings, which isn't flushed or closed
+	 *
+	 * @throws IOException If an exception occurs reading or writing the mappings
+	 */
+	public static void convert(Reader in, Writer out) throws IOException {
+		TinyV2Converter converter = new TinyV2Converter(out);
+		char[] buffer = new char[BUFFER_SIZE];
+		int filled = 0;
+
+		for (int read; (read = in.read(buffer, filled, buffer.length - filled)) >= 0;) {
+			filled += read;
+
+			int used = converter.feed(buffer, 0, filled);
+			filled -= used;
+			System.arraycopy(buffer, used, buffer, 0, filled);
+
+			//Only happens if a single line is longer than the entire buffer
+			if (filled == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+
+		converter.finish(buffer, 0, filled);
+	}
+
+	/**
+	 * Converts every complete line in the given buffer
+	 *
+	 * @param buffer The buffer holding the text to convert
+	 * @param start The index of the first character of text in the buffer
+	 * @param end The index after the last character of text in the buffer
+	 *
+	 * @return The number of characters used, any left are an incomplete line which should be fed again once the rest is known
+	 *
+	 * @throws IOException If the text is malformed or an exception occurs writing the converted text
+	 */
+	public int feed(char[] buffer, int start, int end) throws IOException {
+		int lineStart = start;
+
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == '\n') {
+				acceptLine(buffer, lineStart, i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i);
+				lineStart = i + 1;
+			}
+		}
+
+		return lineStart - start;
+	}
+
+	/**
+	 * Converts the final line of the text, if there is one left over from the last call to {@link #feed(char[], int, int)}
+	 *
+	 * @param buffer The buffer holding the remaining text
+	 * @param start The index of the first character of the remaining text in the buffer
+	 * @param end The index after the last character of the remaining text in the buffer
+	 *
+	 * @throws IOException If the text is malformed or an exception occurs writing the converted text
+	 */
+	public void finish(char[] buffer, int start, int end) throws IOException {
+		if (end > start) acceptLine(buffer, start, buffer[end - 1] == '\r' ? end - 1 : end);
+		if (!seenHeader) throw new IOException("Missing Tiny v2 header");
+	}
+
+	private void acceptLine(char[] line, int start, int end) throws IOException {
+		if (!seenHeader) {
+			if (!startsWith(line, start, end, "tiny\t2\t")) throw new IOException("Invalid Tiny v2 header: " + new String(line, start, end - start));
+			seenHeader = true;
+
+			int namespaces = indexOf(line, start + 7, end, '\t'); //Skip over the minor version
+			if (namespaces < 0) throw new IOException("Missing namespaces from Tiny v2 header");
+
+			out.write("v1");
+			out.write(line, namespaces, end - namespaces);
+			out.write('\n');
+			return;
+		}
+
+		int depth = start;
+		while (depth < end && line[depth] == '\t') depth++;
+		depth -= start;
+
+		switch (depth) {
+		case 0:
+			if (startsWith(line, start, end, "c\t")) {
+				int nameEnd = indexOf(line, start + 2, end, '\t');
+				if (nameEnd < 0) nameEnd = end;
+
+				ownerLength = nameEnd - start - 2;
+				if (ownerLength > owner.length) owner = new char[Math.max(ownerLength, owner.length * 2)];
+				System.arraycopy(line, start + 2, owner, 0, ownerLength);
+				if (escapedNames) ownerLength = unescape(owner, ownerLength);
+
+				out.write("CLASS");
+				writeNames(line, start + 1, end);
+			}
+			break;
+
+		case 1:
+			if (ownerLength < 0) {//Properties come before any classes
+				if (startsWith(line, start + 1, end, "escaped-names") && (end == start + 14 || line[start + 14] == '\t')) escapedNames = true;
+			} else if (startsWith(line, start + 1, end, "f\t")) {
+				out.write("FIELD\t");
+				out.write(owner, 0, ownerLength);
+				writeNames(line, start + 2, end);
+			} else if (startsWith(line, start + 1, end, "m\t")) {
+				out.write("METHOD\t");
+				out.write(owner, 0, ownerLength);
+				writeNames(line, start + 2, end);
+			} //Otherwise it's a class comment which v1 can't hold
+			break;
+
+		default: //Parameters, locals and comments, none of which v1 can hold
+			break;
+		}
+	}
+
+	private void writeNames(char[] line, int start, int end) throws IOException {
+		assert line[start] == '\t';
+
+		if (escapedNames && indexOf(line, start, end, '\\') >= 0) {
+			for (int i = start; i < end; i++) {
+				char c = line[i];
+
+				if (c == '\\' && ++i < end) {
+					int index = ESCAPED.indexOf(line[i]);
+					if (index < 0) throw new IOException("Invalid escape sequence: \\" + line[i]);
+					c = TO_ESCAPE.charAt(index);
+				}
+
+				out.write(c);
+			}
+		} else {
+			out.write(line, start, end - start);
+		}
+
+		out.write('\n');
+	}
+
+	private static int unescape(char[] name, int length) throws IOException {
+		int out = 0;
+
+		for (int i = 0; i < length; i++) {
+			char c = name[i];
+
+			if (c == '\\' && ++i < length) {
+				int index = ESCAPED.indexOf(name[i]);
+				if (index < 0) throw new IOException("Invalid escape sequence: \\" + name[i]);
+				c = TO_ESCAPE.charAt(index);
+			}
+
+			name[out++] = c;
+		}
+
+		return out;
+	}
+
+	private static boolean startsWith(char[] line, int start, int end, String prefix) {
+		if (end - start < prefix.length()) return false;
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line[start + i] != prefix.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	private static int indexOf(char[] line, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (line[i] == c) return i;
+		}
+
+		return -1;
+	}
+}
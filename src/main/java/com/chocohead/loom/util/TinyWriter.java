@@ -19,6 +19,11 @@ public class TinyWriter implements MappingProcessor, AutoCloseable {
 		writer.write('\n');
 	}
 
+	/** Writes the mappings without a header, for when the output will be joined onto the end of a file which already has one */
+	public TinyWriter(Writer writer) {
+		this.writer = writer;
+	}
+
 	@Override
 	public void acceptClass(String srcName, String dstName) {
 		try {
@@ -0,0 +1,63 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.util.ArtifactCache;
+
+class ArtifactCacheTest {
+	@TempDir
+	Path testDir;
+
+	@Test
+	void testKeys() {
+		assertEquals(ArtifactCache.makeKey("a", "b"), ArtifactCache.makeKey("a", "b"));
+		assertNotEquals(ArtifactCache.makeKey("ab", "c"), ArtifactCache.makeKey("a", "bc"));
+		assertNotEquals(ArtifactCache.makeKey("a", "b"), ArtifactCache.makeKey("b", "a"));
+	}
+
+	@Test
+	void testMaking() throws IOException {
+		Path artifact = testDir.resolve("artifact.txt");
+
+		assertTrue(ArtifactCache.makeIfInvalid(artifact, "first", to -> Files.write(to, Collections.singletonList("first"))));
+		assertTrue(ArtifactCache.isValid(artifact, "first"));
+		assertFalse(ArtifactCache.makeIfInvalid(artifact, "first", to -> Files.write(to, Collections.singletonList("wrong"))));
+		assertEquals(Collections.singletonList("first"), Files.readAllLines(artifact, StandardCharsets.UTF_8));
+
+		assertFalse(ArtifactCache.isValid(artifact, "second"));
+		assertTrue(ArtifactCache.makeIfInvalid(artifact, "second", to -> Files.write(to, Collections.singletonList("second"))));
+		assertEquals(Collections.singletonList("second"), Files.readAllLines(artifact, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testCrash() throws IOException {
+		Path artifact = testDir.resolve("artifact.txt");
+		assertTrue(ArtifactCache.makeIfInvalid(artifact, "first", to -> Files.write(to, Collections.singletonList("first"))));
+
+		assertThrows(IOException.class, () -> ArtifactCache.makeIfInvalid(artifact, "second", to -> {
+			Files.write(to, Collections.singletonList("half"));
+			throw new IOException("Crash half way through");
+		}));
+
+		//The old artifact should be left alone, and the half written one cleared up
+		assertTrue(ArtifactCache.isValid(artifact, "first"));
+		assertFalse(ArtifactCache.isValid(artifact, "second"));
+		try (Stream<Path> files = Files.list(testDir)) {
+			assertTrue(files.noneMatch(path -> path.toString().endsWith(".tmp")));
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import com.chocohead.loom.util.DownloadUtil;
+import com.chocohead.loom.util.DownloadUtil.Request;
+import com.chocohead.loom.util.FileUtils;
+
+class DownloadTest {
+	private static final byte[] CONTENTS = "Some very important jar contents".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path testDir;
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger mostActive = new AtomicInteger();
+	private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+	private final List<String> ranges = new ArrayList<>();
+	private ExecutorService serverThreads;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			connections.add(exchange.getRemoteAddress());
+			mostActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+
+			try {
+				if (exchange.getRequestURI().getPath().endsWith(".jar")) {
+					exchange.sendResponseHeaders(200, CONTENTS.length);
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(CONTENTS);
+					}
+				} else {
+					byte[] page = "Not here".getBytes(StandardCharsets.UTF_8);
+					exchange.sendResponseHeaders(404, page.length);
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(page);
+					}
+				}
+			} finally {
+				active.decrementAndGet();
+			}
+		});
+		server.createContext("/flaky.jar", exchange -> {
+			requests.incrementAndGet();
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+			if (range == null) {
+				//Promise everything but stop half way through
+				exchange.sendResponseHeaders(200, CONTENTS.length);
+				exchange.getResponseBody().write(CONTENTS, 0, CONTENTS.length / 2);
+				exchange.getResponseBody().flush();
+				exchange.close();
+			} else {
+				ranges.add(range + ' ' + exchange.getRequestHeaders().getFirst("If-Range"));
+				int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+
+				exchange.getResponseHeaders().add("Content-Range", "bytes " + start + '-' + (CONTENTS.length - 1) + '/' + CONTENTS.length);
+				exchange.sendResponseHeaders(206, CONTENTS.length - start);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(CONTENTS, start, CONTENTS.length - start);
+				}
+			}
+		});
+		server.createContext("/misranged.json", exchange -> {
+			int request = requests.incrementAndGet();
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+			if (range != null) {
+				//Ignore where the range is meant to start, but still claim to be sending part of the file
+				ranges.add(range);
+				exchange.getResponseHeaders().add("Content-Range", "bytes 0-" + (CONTENTS.length - 1) + '/' + CONTENTS.length);
+				exchange.sendResponseHeaders(206, CONTENTS.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(CONTENTS);
+				}
+			} else if (request == 1) {
+				exchange.sendResponseHeaders(200, CONTENTS.length);
+				exchange.getResponseBody().write(CONTENTS, 0, CONTENTS.length / 2);
+				exchange.getResponseBody().flush();
+				exchange.close();
+			} else {
+				exchange.sendResponseHeaders(200, CONTENTS.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(CONTENTS);
+				}
+			}
+		});
+		server.setExecutor(serverThreads = Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http", "localhost", server.getAddress().getPort(), path);
+	}
+
+	private Path makeExpected() throws IOException {
+		return Files.write(testDir.resolve("expected.jar"), CONTENTS);
+	}
+
+	@Test
+	void testVerified() throws IOException {
+		String hash = FileUtils.hashSHA1(makeExpected());
+		Path to = testDir.resolve("file.jar");
+
+		DownloadUtil.downloadIfChanged(url("/file.jar"), to, hash, CONTENTS.length, true);
+		assertArrayEquals(CONTENTS, Files.readAllBytes(to));
+		assertEquals(1, requests.get());
+
+		//Already having the right file shouldn't need the server at all
+		DownloadUtil.downloadIfChanged(url("/file.jar"), to, hash, CONTENTS.length, true);
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void testCorrupt() throws IOException {
+		String hash = FileUtils.hashSHA1(makeExpected());
+		Path to = testDir.resolve("file.jar");
+		byte[] old = {1, 2, 3};
+		Files.write(to, old);
+
+		assertThrows(IOException.class, () -> DownloadUtil.downloadIfChanged(url("/file.jar"), to, "da39a3ee5e6b4b0d3255bfef95601890afd80709", CONTENTS.length, true));
+		assertArrayEquals(old, Files.readAllBytes(to), "Corrupt download replaced existing file");
+
+		assertThrows(IOException.class, () -> DownloadUtil.downloadIfChanged(url("/file.jar"), to, hash, CONTENTS.length + 1, true));
+		assertArrayEquals(old, Files.readAllBytes(to), "Short download replaced existing file");
+
+		try (Stream<Path> files = Files.list(testDir)) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".part")), "Left partial download behind");
+		}
+	}
+
+	@Test
+	void testStamps() throws IOException {
+		Path expected = makeExpected();
+		String hash = FileUtils.hashSHA1(expected);
+		Path to = testDir.resolve("file.jar");
+
+		DownloadUtil.downloadIfChanged(url("/file.jar"), to, hash, CONTENTS.length, true);
+		assertTrue(Files.exists(to.resolveSibling("file.jar.sha1stamp")), "Verified download wasn't stamped");
+
+		//Changing the contents without changing the size, time or file shows the stamp being trusted over hashing again
+		FileTime time = Files.getLastModifiedTime(to);
+		byte[] changed = CONTENTS.clone();
+		changed[0]++;
+		Files.write(to, changed);
+		Files.setLastModifiedTime(to, time);
+		assertTrue(FileUtils.matchesSHA1(to, hash));
+
+		//Whereas any visible change should have it hashed again
+		Files.setLastModifiedTime(to, FileTime.fromMillis(time.toMillis() + 10_000));
+		assertFalse(FileUtils.matchesSHA1(to, hash));
+
+		assertTrue(FileUtils.matchesSHA1(expected, hash));
+		assertTrue(Files.exists(expected.resolveSibling("expected.jar.sha1stamp")), "Successful check wasn't stamped");
+	}
+
+	@Test
+	void testStampedHash() throws IOException {
+		Path file = makeExpected();
+		String hash = FileUtils.hashSHA1(file);
+		assertEquals(hash, FileUtils.stampedSHA1(file));
+		assertTrue(Files.exists(file.resolveSibling("expected.jar.sha1stamp")), "Hashed file wasn't stamped");
+
+		//As with matchesSHA1, an unchanged size, time and file shows the stamp being trusted over hashing again
+		FileTime time = Files.getLastModifiedTime(file);
+		byte[] changed = CONTENTS.clone();
+		changed[0]++;
+		Files.write(file, changed);
+		Files.setLastModifiedTime(file, time);
+		assertEquals(hash, FileUtils.stampedSHA1(file));
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(time.toMillis() + 10_000));
+		String changedHash = FileUtils.stampedSHA1(file);
+		assertEquals(FileUtils.hashSHA1(file), changedHash);
+		assertFalse(hash.equals(changedHash));
+
+		//Files which aren't ours can be stamped elsewhere instead
+		Path library = Files.write(Files.createDirectories(testDir.resolve("libs")).resolve("library.jar"), CONTENTS);
+		Path stamps = testDir.resolve("stamps");
+		assertEquals(hash, FileUtils.stampedSHA1(library, stamps));
+		assertEquals(hash, FileUtils.stampedSHA1(library, stamps));
+		assertFalse(Files.exists(library.resolveSibling("library.jar.sha1stamp")), "Stamped beside a file which isn't ours");
+		try (Stream<Path> files = Files.list(stamps)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void testBatch() throws IOException {
+		String hash = FileUtils.hashSHA1(makeExpected());
+
+		List<Request> downloads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			downloads.add(new Request(url("/file-" + i + ".jar"), testDir.resolve("file-" + i + ".jar"), hash, CONTENTS.length));
+		}
+		DownloadUtil.downloadAll(downloads, 3, true);
+
+		for (Request download : downloads) {
+			assertArrayEquals(CONTENTS, Files.readAllBytes(download.to));
+		}
+		assertEquals(8, requests.get());
+		assertTrue(mostActive.get() <= 3, "Downloaded more at once than allowed: " + mostActive.get());
+
+		IOException e = assertThrows(IOException.class, () -> DownloadUtil.downloadAll(Arrays.asList(new Request(url("/missing"), testDir.resolve("missing")),
+				new Request(url("/other-missing"), testDir.resolve("other-missing"))), 2, true));
+		assertEquals(1, e.getSuppressed().length, "Second failure wasn't kept");
+	}
+
+	@Test
+	void testConnectionReuse() throws IOException {
+		for (int i = 0; i < 4; i++) {
+			DownloadUtil.downloadIfChanged(url("/file-" + i + ".jar"), testDir.resolve("file-" + i + ".jar"), true);
+		}
+		assertThrows(IOException.class, () -> DownloadUtil.downloadIfChanged(url("/missing"), testDir.resolve("missing"), true));
+		DownloadUtil.downloadIfChanged(url("/file.jar"), testDir.resolve("file.jar"), true);
+
+		assertEquals(6, requests.get());
+		assertEquals(1, connections.size(), "Connections weren't reused: " + connections);
+	}
+
+	@Test
+	void testResume() throws IOException {
+		String hash = FileUtils.hashSHA1(makeExpected());
+		Path to = testDir.resolve("flaky.jar");
+
+		String oldBackoff = System.setProperty(DownloadUtil.BACKOFF_PROPERTY, "1");
+		try {
+			DownloadUtil.downloadIfChanged(url("/flaky.jar"), to, hash, CONTENTS.length, true);
+		} finally {
+			if (oldBackoff != null) {
+				System.setProperty(DownloadUtil.BACKOFF_PROPERTY, oldBackoff);
+			} else {
+				System.clearProperty(DownloadUtil.BACKOFF_PROPERTY);
+			}
+		}
+
+		assertArrayEquals(CONTENTS, Files.readAllBytes(to));
+		assertEquals(2, requests.get());
+		assertEquals(Arrays.asList("bytes=" + CONTENTS.length / 2 + "- \"v1\""), ranges);
+		assertFalse(Files.exists(to.resolveSibling("flaky.jar.part")), "Left partial download behind");
+	}
+
+	@Test
+	void testMisplacedResume() throws IOException {
+		Path to = testDir.resolve("version.json");
+
+		String oldBackoff = System.setProperty(DownloadUtil.BACKOFF_PROPERTY, "1");
+		try {
+			//Without a hash to check against, only the range the server says it sent can catch this
+			DownloadUtil.downloadIfChanged(url("/misranged.json"), to, true);
+		} finally {
+			if (oldBackoff != null) {
+				System.setProperty(DownloadUtil.BACKOFF_PROPERTY, oldBackoff);
+			} else {
+				System.clearProperty(DownloadUtil.BACKOFF_PROPERTY);
+			}
+		}
+
+		assertArrayEquals(CONTENTS, Files.readAllBytes(to));
+		assertEquals(3, requests.get());
+		assertEquals(Arrays.asList("bytes=" + CONTENTS.length / 2 + '-'), ranges);
+		try (Stream<Path> files = Files.list(testDir)) {
+			assertFalse(files.map(file -> file.getFileName().toString()).anyMatch(name -> name.contains(".part")), "Left partial download or lock behind");
+		}
+	}
+}
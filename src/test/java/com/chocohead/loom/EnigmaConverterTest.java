@@ -0,0 +1,86 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.util.EnigmaConverter;
+
+class EnigmaConverterTest {
+	@TempDir
+	Path testDir;
+
+	private Path makeZip(String name, String... mappings) throws IOException {
+		Path zip = testDir.resolve(name);
+
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+			for (int i = 0; i < mappings.length; i++) {
+				out.putNextEntry(new ZipEntry("mappings/Thing" + i + ".mapping"));
+				out.write(mappings[i].getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+
+		return zip;
+	}
+
+	private static String makeMapping(int i, String name) {
+		return "CLASS a" + i + " net/minecraft/" + name + '\n'
+				+ "\tFIELD b count I\n"
+				+ "\tMETHOD c merge (La" + i + ";)V\n"
+				+ "\t\tARG 1 other\n"
+				+ "\t\tARG 2 more\n";
+	}
+
+	private void assertMatchesFresh(Path zip, Path tiny, Path params) throws IOException {
+		Path freshTiny = testDir.resolve("fresh.tiny");
+		Path freshParams = testDir.resolve("fresh.param");
+		Files.deleteIfExists(freshTiny);
+		Files.deleteIfExists(freshParams);
+		Files.deleteIfExists(EnigmaConverter.stateFor(freshTiny));
+		assertTrue(EnigmaConverter.convert(zip, freshTiny, freshParams, "intermediary", "named"));
+
+		assertEquals(Files.readAllLines(freshTiny), Files.readAllLines(tiny));
+		assertEquals(Files.readAllLines(freshParams), Files.readAllLines(params));
+	}
+
+	@Test
+	void testIncremental() throws IOException {
+		Path tiny = testDir.resolve("mappings.tiny");
+		Path params = testDir.resolve("mappings.param");
+		Path first = makeZip("first.zip", makeMapping(0, "Thing"));
+		assertTrue(EnigmaConverter.convert(first, tiny, params, "intermediary", "named"));
+
+		assertEquals(Arrays.asList("v1\tintermediary\tnamed",
+				"CLASS\ta0\tnet/minecraft/Thing",
+				"FIELD\ta0\tI\tb\tcount",
+				"METHOD\ta0\t(La0;)V\tc\tmerge"), Files.readAllLines(tiny));
+		assertEquals(Arrays.asList("net/minecraft/Thing/c(La0;)V",
+				"\t2: more",
+				"\t1: other"), Files.readAllLines(params));
+		assertFalse(EnigmaConverter.convert(first, tiny, params, "intermediary", "named"));
+
+		//Add a file, then change one, making sure the result is the same as converting everything from scratch
+		Path second = makeZip("second.zip", makeMapping(0, "Thing"), makeMapping(1, "Other"));
+		assertTrue(EnigmaConverter.convert(second, tiny, params, "intermediary", "named"));
+		assertMatchesFresh(second, tiny, params);
+
+		Path third = makeZip("third.zip", makeMapping(0, "Thing"), makeMapping(1, "Renamed"));
+		assertTrue(EnigmaConverter.convert(third, tiny, params, "intermediary", "named"));
+		assertMatchesFresh(third, tiny, params);
+		assertTrue(Files.readAllLines(tiny).contains("CLASS\ta1\tnet/minecraft/Renamed"));
+
+		assertFalse(EnigmaConverter.convert(third, tiny, params, "intermediary", "named"));
+	}
+}
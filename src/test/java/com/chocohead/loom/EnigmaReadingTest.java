@@ -0,0 +1,134 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.util.MappingProcessor;
+import com.chocohead.loom.util.MappingReaders;
+
+class EnigmaReadingTest {
+	private static class RecordingProcessor implements MappingProcessor {
+		final List<String> events = new ArrayList<>();
+
+		private void record(Object... event) {
+			events.add(Arrays.toString(event));
+		}
+
+		@Override
+		public void acceptClass(String srcName, String dstName) {
+			record("class", srcName, dstName);
+		}
+
+		@Override
+		public void acceptClassComment(String name, String comment) {
+			record("class comment", name, comment);
+		}
+
+		@Override
+		public void acceptMethod(String srcClassName, String srcName, String desc, String dstClassName, String dstName) {
+			record("method", srcClassName, srcName, desc, dstClassName, dstName);
+		}
+
+		@Override
+		public void acceptMethodComment(String className, String name, String desc, String comment) {
+			record("method comment", className, name, desc, comment);
+		}
+
+		@Override
+		public void acceptMethodArg(String className, String methodName, String methodDesc, String dstClassName, int argIndex, String argName) {
+			record("arg", className, methodName, methodDesc, dstClassName, argIndex, argName);
+		}
+
+		@Override
+		public void acceptMethodArgComment(String className, String name, String desc, int argIndex, String comment) {
+			record("arg comment", className, name, desc, argIndex, comment);
+		}
+
+		@Override
+		public void acceptMethodVar(String className, String methodName, String methodDesc, String dstClassName, int varIndex, int lvtIndex, String varName) {
+			record("var", className, methodName, methodDesc, dstClassName, varIndex, lvtIndex, varName);
+		}
+
+		@Override
+		public void acceptMethodVarComment(String className, String name, String desc, int argIndex, int lvtIndex, String comment) {
+			record("var comment", className, name, desc, argIndex, lvtIndex, comment);
+		}
+
+		@Override
+		public void acceptField(String srcClassName, String srcName, String desc, String dstClassName, String dstName) {
+			record("field", srcClassName, srcName, desc, dstClassName, dstName);
+		}
+
+		@Override
+		public void acceptFieldComment(String className, String name, String desc, String comment) {
+			record("field comment", className, name, desc, comment);
+		}
+	}
+
+	@TempDir
+	Path testDir;
+
+	private Path makeZip(String mappings) throws IOException {
+		Path zip = testDir.resolve("mappings.zip");
+
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+			out.putNextEntry(new ZipEntry("mappings/Thing.mapping"));
+			out.write(mappings.getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+		}
+
+		return zip;
+	}
+
+	@Test
+	void testExactEvents() throws IOException {
+		Path zip = makeZip("CLASS a net/minecraft/Thing\r\n"
+				+ "\tCOMMENT A \\tthing\r\n"
+				+ "\tCOMMENT over two lines\r\n"
+				+ "\tFIELD b count I\r\n"
+				+ "\t\tCOMMENT How many\n"
+				+ "\tFIELD c I\n"
+				+ "\tMETHOD d merge (La;)V\n"
+				+ "\t\tCOMMENT Merges things\n"
+				+ "\t\tARG 1 other\n"
+				+ "\t\t\tCOMMENT The other thing\n"
+				+ "\t\tVAR 2 temp\n"
+				+ "\tCLASS a$e Inner\n"
+				+ "\t\tMETHOD f (I)V\n"
+				+ "\t\t\tARG 1 size\n"
+				+ "\t\tCLASS g\n"
+				+ "\t\t\tFIELD h deep J\n"
+				+ "\tCLASS net/minecraft/Thing$i Other\n"
+				+ "\t\tCOMMENT Last");
+
+		RecordingProcessor processor = new RecordingProcessor();
+		MappingReaders.readEnigmaFrom(zip, processor);
+		assertEquals(Arrays.asList(
+				"[class, a, net/minecraft/Thing]",
+				"[class comment, a, A \tthing\nover two lines]",
+				"[field, a, b, I, net/minecraft/Thing, count]",
+				"[field comment, a, b, I, How many]",
+				"[method, a, d, (La;)V, net/minecraft/Thing, merge]",
+				"[method comment, a, d, (La;)V, Merges things]",
+				"[arg, a, d, (La;)V, net/minecraft/Thing, 1, other]",
+				"[arg comment, a, d, (La;)V, 1, The other thing]",
+				"[var, a, d, (La;)V, net/minecraft/Thing, -1, 2, temp]",
+				"[class, a$e, net/minecraft/Thing$Inner]",
+				"[arg, a$e, f, (I)V, net/minecraft/Thing$Inner, 1, size]",
+				"[field, a$e$g, h, J, a$e$g, deep]",
+				"[class, a$i, net/minecraft/Thing$Other]",
+				"[class comment, a$i, Last]"), processor.events);
+	}
+}
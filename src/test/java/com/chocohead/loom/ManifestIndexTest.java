@@ -0,0 +1,67 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.minecraft.MinecraftVersions;
+import com.chocohead.loom.minecraft.MinecraftVersions.Version;
+
+class ManifestIndexTest {
+	@TempDir
+	Path testDir;
+
+	private static String makeManifest(String... ids) {
+		StringBuilder json = new StringBuilder("{\"latest\": {}, \"versions\": [");
+
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) json.append(", ");
+			json.append("{\"id\": \"").append(ids[i]).append("\", \"type\": \"release\", \"url\": \"https://example.com/").append(ids[i]).append(".json\"}");
+		}
+
+		return json.append("]}").toString();
+	}
+
+	@Test
+	void testIndex() throws IOException {
+		Path manifest = testDir.resolve("version_manifest.json");
+		Files.write(manifest, makeManifest("1.14.4", "1.14.3").getBytes(StandardCharsets.UTF_8));
+
+		Version version = MinecraftVersions.find(manifest, "1.14.3", true);
+		assertEquals("1.14.3", version.getID());
+		assertEquals("https://example.com/1.14.3.json", version.getURL().toString());
+		assertNull(MinecraftVersions.find(manifest, "1.15", true));
+		assertTrue(Files.exists(manifest.resolveSibling("version_manifest.json.index")));
+
+		//A changed manifest should be indexed again
+		Files.write(manifest, makeManifest("1.15", "1.14.4", "1.14.3").getBytes(StandardCharsets.UTF_8));
+		assertEquals("https://example.com/1.15.json", MinecraftVersions.find(manifest, "1.15", true).getURL().toString());
+	}
+
+	@Test
+	void testFresh() throws IOException {
+		Path manifest = testDir.resolve("version_manifest.json");
+		Files.write(manifest, makeManifest("1.14.4").getBytes(StandardCharsets.UTF_8));
+		MinecraftVersions.find(manifest, "1.14.4", true);
+
+		//Whilst the manifest is fresh, finding a known version shouldn't need to go anywhere near the network
+		String oldTTL = System.setProperty(MinecraftVersions.TTL_PROPERTY, Long.toString(Long.MAX_VALUE));
+		try {
+			assertEquals("1.14.4", MinecraftVersions.find(manifest, "1.14.4", false).getID());
+		} finally {
+			if (oldTTL != null) {
+				System.setProperty(MinecraftVersions.TTL_PROPERTY, oldTTL);
+			} else {
+				System.clearProperty(MinecraftVersions.TTL_PROPERTY);
+			}
+		}
+	}
+}
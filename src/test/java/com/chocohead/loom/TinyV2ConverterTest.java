@@ -0,0 +1,58 @@
+package com.chocohead.loom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import com.chocohead.loom.util.TinyV2Converter;
+
+class TinyV2ConverterTest {
+	private static String convert(String v2) throws IOException {
+		StringWriter out = new StringWriter();
+		TinyV2Converter.convert(new StringReader(v2), out);
+		return out.toString();
+	}
+
+	@Test
+	void testConvert() throws IOException {
+		String v2 = "tiny\t2\t0\tintermediary\tnamed\n"
+				+ "\tsorted-by\tintermediary\n"
+				+ "c\tnet/minecraft/class_1\tnet/minecraft/Thing\n"
+				+ "\tc\tA class comment\n"
+				+ "\tf\tI\tfield_1\tcount\n"
+				+ "\t\tc\tA field comment\n"
+				+ "\tm\t(I)V\tmethod_1\tsetCount\n"
+				+ "\t\tp\t1\t\tcount\n"
+				+ "\t\t\tc\tA parameter comment\n"
+				+ "\t\tv\t2\t0\t\tlocal\n"
+				+ "c\tnet/minecraft/class_2\tnet/minecraft/Other\n"
+				+ "\tm\t()V\tmethod_2\trun";
+
+		assertEquals("v1\tintermediary\tnamed\n"
+				+ "CLASS\tnet/minecraft/class_1\tnet/minecraft/Thing\n"
+				+ "FIELD\tnet/minecraft/class_1\tI\tfield_1\tcount\n"
+				+ "METHOD\tnet/minecraft/class_1\t(I)V\tmethod_1\tsetCount\n"
+				+ "CLASS\tnet/minecraft/class_2\tnet/minecraft/Other\n"
+				+ "METHOD\tnet/minecraft/class_2\t()V\tmethod_2\trun\n", convert(v2));
+	}
+
+	@Test
+	void testEscapedNames() throws IOException {
+		String v2 = "tiny\t2\t0\tintermediary\tnamed\r\n"
+				+ "\tescaped-names\r\n"
+				+ "c\tclass_1\tOdd\\\\Name\r\n";
+
+		assertEquals("v1\tintermediary\tnamed\nCLASS\tclass_1\tOdd\\Name\n", convert(v2));
+	}
+
+	@Test
+	void testBadHeader() {
+		assertThrows(IOException.class, () -> convert("v1\tintermediary\tnamed\n"));
+		assertThrows(IOException.class, () -> convert(""));
+	}
+}
@@ -0,0 +1,110 @@
+package com.chocohead.loom.minecraft;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+class ClasspathIndexTest {
+	@TempDir
+	Path testDir;
+
+	private static byte[] makeClass(String name, String superName) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, new String[] {"java/lang/Runnable"});
+		writer.visitField(Opcodes.ACC_PRIVATE, "count", "I", null, null).visitEnd();
+
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+		method.visitCode();
+		method.visitInsn(Opcodes.RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private Path makeJar(String name, String... classes) throws IOException {
+		Path jar = testDir.resolve(name);
+
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (String type : classes) {
+				out.putNextEntry(new ZipEntry(type + ".class"));
+				out.write(makeClass(type, "java/lang/Object"));
+				out.closeEntry();
+			}
+		}
+
+		return jar;
+	}
+
+	@Test
+	void testIndex() throws IOException {
+		Path first = makeJar("first.jar", "a/Thing", "a/Other");
+		Path second = makeJar("second.jar", "a/Thing", "b/Third");
+		Path index = ClasspathIndex.of(testDir.resolve("index.jar"), first, second);
+
+		List<String> members = new ArrayList<>();
+		boolean[] hasCode = {false};
+		try (FileSystem fs = FileSystems.newFileSystem(index, (ClassLoader) null)) {
+			for (String type : Arrays.asList("a/Thing", "a/Other", "b/Third")) {
+				Path file = fs.getPath(type + ".class");
+				assertTrue(Files.exists(file), "Missing " + type);
+
+				new ClassReader(Files.readAllBytes(file)).accept(new ClassVisitor(Opcodes.ASM7) {
+					@Override
+					public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+						members.add(name + " extends " + superName + " implements " + Arrays.toString(interfaces));
+					}
+
+					@Override
+					public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+						members.add(name + descriptor);
+
+						return new MethodVisitor(Opcodes.ASM7) {
+							@Override
+							public void visitCode() {
+								hasCode[0] = true;
+							}
+						};
+					}
+				}, 0);
+			}
+		}
+
+		assertEquals(Arrays.asList("a/Thing extends java/lang/Object implements [java/lang/Runnable]", "run()V",
+				"a/Other extends java/lang/Object implements [java/lang/Runnable]", "run()V",
+				"b/Third extends java/lang/Object implements [java/lang/Runnable]", "run()V"), members);
+		assertFalse(hasCode[0], "Index kept method code");
+
+		//The same classpath shouldn't need indexing again, but a changed one should
+		FileTime made = FileTime.fromMillis(0);
+		Files.setLastModifiedTime(index, made);
+		ClasspathIndex.of(index, first, second);
+		assertEquals(made, Files.getLastModifiedTime(index));
+
+		Files.setLastModifiedTime(second, FileTime.fromMillis(Files.getLastModifiedTime(second).toMillis() + 10_000));
+		ClasspathIndex.of(index, first, second);
+		assertNotEquals(made, Files.getLastModifiedTime(index));
+	}
+}
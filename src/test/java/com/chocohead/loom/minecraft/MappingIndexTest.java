@@ -0,0 +1,113 @@
+package com.chocohead.loom.minecraft;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MappingsProvider;
+
+class MappingIndexTest {
+	private static final String MAPPINGS = "v1\tofficial\tintermediary\tnamed\n"
+			+ "CLASS\ta\tnet/minecraft/class_1\tnet/minecraft/Thing\n"
+			+ "CLASS\tb\tnet/minecraft/class_2\tnet/minecraft/Other\n"
+			+ "FIELD\ta\tI\tc\tfield_1\tcount\n"
+			+ "FIELD\tb\tLa;\td\tfield_2\tthing\n"
+			+ "METHOD\ta\t(La;)V\te\tmethod_1\tmerge\n"
+			+ "METHOD\tb\t()La;\te\tmethod_1\tmerge\n"
+			+ "METHOD\tc\t()V\tf\tmethod_2\torphaned\n";
+
+	@TempDir
+	Path testDir;
+
+	private static void assertTablesMatch(MappingTable expected, MappingTable actual, String message) {
+		Map<String, String> expectedClasses = new HashMap<>(), expectedFields = new HashMap<>(), expectedMethods = new HashMap<>();
+		expected.load(expectedClasses, expectedFields, expectedMethods);
+
+		Map<String, String> actualClasses = new HashMap<>(), actualFields = new HashMap<>(), actualMethods = new HashMap<>();
+		actual.load(actualClasses, actualFields, actualMethods);
+
+		assertEquals(expectedClasses, actualClasses, "Class mismatch for " + message);
+		assertEquals(expectedFields, actualFields, "Field mismatch for " + message);
+		assertEquals(expectedMethods, actualMethods, "Method mismatch for " + message);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Mappings mappings = MappingsProvider.readTinyMappings(new ByteArrayInputStream(MAPPINGS.getBytes(StandardCharsets.UTF_8)), false);
+		Path file = testDir.resolve("mappings.tiny.index");
+		MappingIndex.write(mappings, file);
+		MappingIndex index = MappingIndex.open(file);
+
+		assertEquals(mappings.getNamespaces().size(), index.getNamespaces().size());
+		assertTrue(index.getNamespaces().containsAll(mappings.getNamespaces()));
+
+		for (String from : mappings.getNamespaces()) {
+			for (String to : mappings.getNamespaces()) {
+				assertTablesMatch(MappingTable.of(mappings, from, to), index.makeTable(from, to), from + " -> " + to);
+			}
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> index.makeTable("official", "missing"));
+	}
+
+	@Test
+	void testMultipleProjections() throws IOException {
+		Mappings mappings = MappingsProvider.readTinyMappings(new ByteArrayInputStream(MAPPINGS.getBytes(StandardCharsets.UTF_8)), false);
+		Path file = testDir.resolve("mappings.tiny.index");
+		MappingIndex.write(mappings, file);
+		MappingIndex index = MappingIndex.open(file);
+
+		String[][] projections = {{"official", "intermediary"}, {"intermediary", "named"}, {"official", "named"}};
+		MappingTable[] textTables = MappingTable.of(mappings, projections);
+		MappingTable[] indexTables = index.makeTables(projections);
+		assertEquals(projections.length, textTables.length);
+		assertEquals(projections.length, indexTables.length);
+
+		for (int i = 0; i < projections.length; i++) {
+			String message = projections[i][0] + " -> " + projections[i][1];
+			MappingTable single = MappingTable.of(mappings, projections[i][0], projections[i][1]);
+
+			assertTablesMatch(single, textTables[i], message);
+			assertTablesMatch(single, indexTables[i], message);
+		}
+	}
+
+	@Test
+	void testCompose() throws IOException {
+		Mappings full = MappingsProvider.readTinyMappings(new ByteArrayInputStream(MAPPINGS.getBytes(StandardCharsets.UTF_8)), false);
+		Mappings intermediary = MappingsProvider.readTinyMappings(new ByteArrayInputStream(("v1\tofficial\tintermediary\n"
+				+ "CLASS\ta\tnet/minecraft/class_1\n"
+				+ "CLASS\tb\tnet/minecraft/class_2\n"
+				+ "FIELD\ta\tI\tc\tfield_1\n"
+				+ "FIELD\tb\tLa;\td\tfield_2\n"
+				+ "METHOD\ta\t(La;)V\te\tmethod_1\n"
+				+ "METHOD\tb\t()La;\te\tmethod_1\n"
+				+ "METHOD\tc\t()V\tf\tmethod_2\n").getBytes(StandardCharsets.UTF_8)), false);
+		Mappings named = MappingsProvider.readTinyMappings(new ByteArrayInputStream(("v1\tintermediary\tnamed\n"
+				+ "CLASS\tnet/minecraft/class_1\tnet/minecraft/Thing\n"
+				+ "CLASS\tnet/minecraft/class_2\tnet/minecraft/Other\n"
+				+ "FIELD\tnet/minecraft/class_1\tI\tfield_1\tcount\n"
+				+ "FIELD\tnet/minecraft/class_2\tLnet/minecraft/class_1;\tfield_2\tthing\n"
+				+ "METHOD\tnet/minecraft/class_1\t(Lnet/minecraft/class_1;)V\tmethod_1\tmerge\n"
+				+ "METHOD\tnet/minecraft/class_2\t()Lnet/minecraft/class_1;\tmethod_1\tmerge\n"
+				+ "METHOD\tc\t()V\tmethod_2\torphaned\n").getBytes(StandardCharsets.UTF_8)), false);
+
+		Map<String, String> methodKeys = new HashMap<>();
+		MappingTable composed = MappingTable.compose(intermediary, "official", "intermediary", named, "named", methodKeys);
+		assertTablesMatch(MappingTable.of(full, "official", "named"), composed, "official -> intermediary -> named");
+
+		assertEquals("net/minecraft/Thing/e(La;)V", methodKeys.get("net/minecraft/Thing/method_1(Lnet/minecraft/class_1;)V"));
+		assertEquals(3, methodKeys.size());
+	}
+}
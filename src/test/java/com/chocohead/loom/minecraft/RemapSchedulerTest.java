@@ -0,0 +1,176 @@
+package com.chocohead.loom.minecraft;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.chocohead.loom.minecraft.RemapScheduler.Graph;
+import com.chocohead.loom.minecraft.RemapScheduler.Remap;
+
+class RemapSchedulerTest {
+	private static final class Node {
+		final String name;
+		final List<Node> children;
+
+		Node(String name, Node... children) {
+			this.name = name;
+			this.children = Arrays.asList(children);
+		}
+	}
+
+	/** Remaps each node's single artifact, keyed the same way {@link RemappedSystem} keys them from a hash per artifact */
+	private static class TestGraph implements Graph<Node> {
+		final Map<String, String> hashes = new ConcurrentHashMap<>();
+		final Map<String, AtomicInteger> remapCounts = new ConcurrentHashMap<>();
+		final Map<String, String> keys = new ConcurrentHashMap<>();
+		final Map<String, List<String>> classpaths = new ConcurrentHashMap<>();
+		final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public Collection<Node> getChildren(Node node) {
+			return node.children;
+		}
+
+		@Override
+		public Object identify(Node node) {
+			return node.name;
+		}
+
+		@Override
+		public Stream<Remap> plan(Node node) {
+			return Stream.of(new Remap(Paths.get(node.name + ".jar"), Paths.get("remapped", node.name + ".jar"), null));
+		}
+
+		@Override
+		public String remap(Remap task, Path[] classpath, String[] classpathKeys) {
+			String name = task.artifact.toString();
+			events.add("start " + name);
+			remapCounts.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+
+			List<String> names = new ArrayList<>();
+			for (Path path : classpath) {
+				names.add(path.getFileName().toString());
+			}
+			classpaths.put(name, names);
+
+			String key = RemappedSystem.makeRemapKey(hashes.getOrDefault(name, name), "mappings", "classpath", classpathKeys);
+			keys.put(name, key);
+			events.add("end " + name);
+			return key;
+		}
+	}
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@AfterEach
+	void stopExecutor() {
+		executor.shutdownNow();
+	}
+
+	/** Makes a graph of a mod and an API both depending on a shared library, with the mod also depending on the API */
+	private static List<Node> makeGraph() {
+		Node base = new Node("base");
+		Node library = new Node("library", base);
+		//A separate instance to the one above, so sharing comes from it being the same dependency rather than the same node
+		Node sameLibrary = new Node("library", new Node("base"));
+		Node api = new Node("api", library);
+
+		return Arrays.asList(new Node("mod", api, sameLibrary), api);
+	}
+
+	private TestGraph run(Map<String, String> hashes) {
+		TestGraph graph = new TestGraph();
+		graph.hashes.putAll(hashes);
+
+		RemapScheduler<Node> scheduler = new RemapScheduler<>(executor, graph);
+		for (Node root : makeGraph()) {
+			scheduler.schedule(root);
+		}
+		scheduler.awaitAll();
+
+		return graph;
+	}
+
+	private static void assertBefore(List<String> events, String first, String second) {
+		int firstIndex = events.indexOf(first);
+		int secondIndex = events.indexOf(second);
+
+		assertTrue(firstIndex >= 0, "Missing " + first + " from " + events);
+		assertTrue(secondIndex >= 0, "Missing " + second + " from " + events);
+		assertTrue(firstIndex < secondIndex, "Expected " + first + " before " + second + " in " + events);
+	}
+
+	@Test
+	void testOrdering() {
+		TestGraph graph = run(Collections.emptyMap());
+
+		assertEquals(4, graph.remapCounts.size());
+		graph.remapCounts.forEach((name, count) -> assertEquals(1, count.get(), name + " was remapped more than once"));
+
+		assertBefore(graph.events, "end base.jar", "start library.jar");
+		assertBefore(graph.events, "end library.jar", "start api.jar");
+		assertBefore(graph.events, "end api.jar", "start mod.jar");
+
+		//Each classpath is everything depended on transitively, but nothing else
+		assertEquals(Collections.emptyList(), graph.classpaths.get("base.jar"));
+		assertEquals(Arrays.asList("base.jar"), graph.classpaths.get("library.jar"));
+		assertEquals(Arrays.asList("library.jar", "base.jar"), graph.classpaths.get("api.jar"));
+		assertEquals(Arrays.asList("api.jar", "library.jar", "base.jar"), graph.classpaths.get("mod.jar"));
+	}
+
+	@Test
+	void testKeyChaining() {
+		TestGraph first = run(Collections.emptyMap());
+		TestGraph second = run(Collections.singletonMap("base.jar", "changed"));
+
+		assertNotEquals(first.keys.get("base.jar"), second.keys.get("base.jar"));
+		//Anything depending on the changed jar needs remapping again too
+		assertNotEquals(first.keys.get("library.jar"), second.keys.get("library.jar"));
+		assertNotEquals(first.keys.get("api.jar"), second.keys.get("api.jar"));
+		assertNotEquals(first.keys.get("mod.jar"), second.keys.get("mod.jar"));
+
+		TestGraph third = run(Collections.emptyMap());
+		assertEquals(first.keys, third.keys, "Keys should be stable between runs");
+	}
+
+	@Test
+	void testFailure() {
+		TestGraph graph = new TestGraph() {
+			@Override
+			public String remap(Remap task, Path[] classpath, String[] classpathKeys) {
+				if ("library.jar".equals(task.artifact.toString())) throw new IllegalStateException("Broken library");
+				return super.remap(task, classpath, classpathKeys);
+			}
+		};
+
+		RemapScheduler<Node> scheduler = new RemapScheduler<>(executor, graph);
+		for (Node root : makeGraph()) {
+			scheduler.schedule(root);
+		}
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, scheduler::awaitAll);
+		assertEquals("Broken library", e.getMessage());
+		assertArrayEquals(new String[] {"base.jar"}, graph.remapCounts.keySet().toArray(), "Remapped something depending on a failed jar");
+		assertFalse(graph.keys.containsKey("mod.jar"));
+	}
+}
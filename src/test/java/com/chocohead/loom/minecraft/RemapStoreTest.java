@@ -0,0 +1,117 @@
+package com.chocohead.loom.minecraft;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.util.ArtifactCache;
+
+class RemapStoreTest {
+	@TempDir
+	Path testDir;
+
+	@Test
+	void testSharing() throws IOException {
+		RemapStore store = new RemapStore(testDir.resolve("store"), Long.MAX_VALUE);
+		String key = ArtifactCache.makeKey("mod", 1);
+		byte[] contents = {1, 2, 3, 4};
+
+		AtomicInteger made = new AtomicInteger();
+		Path first = Files.createDirectories(testDir.resolve("first")).resolve("mod.jar");
+		Path second = Files.createDirectories(testDir.resolve("second")).resolve("mod.jar");
+
+		store.provide(key, first, to -> {
+			made.incrementAndGet();
+			Files.write(to, contents);
+		});
+		store.provide(key, second, to -> {
+			made.incrementAndGet();
+			Files.write(to, contents);
+		});
+
+		assertEquals(1, made.get(), "Store remade a shared jar");
+		assertArrayEquals(contents, Files.readAllBytes(first));
+		assertArrayEquals(contents, Files.readAllBytes(second));
+		assertTrue(ArtifactCache.isValid(second, key));
+	}
+
+	@Test
+	void testEviction() throws IOException {
+		Path root = testDir.resolve("store");
+		RemapStore store = new RemapStore(root, 1500);
+		Path project = Files.createDirectories(testDir.resolve("project"));
+
+		for (int i = 0; i < 3; i++) {
+			String key = ArtifactCache.makeKey("mod", i);
+			store.provide(key, project.resolve("mod-" + i + ".jar"), to -> Files.write(to, new byte[1000]));
+			Files.setLastModifiedTime(root.resolve(key), FileTime.fromMillis(1000 * (i + 1)));
+		}
+		Files.setLastModifiedTime(root.resolve(ArtifactCache.makeKey("mod", 0)), FileTime.fromMillis(5000)); //Most recently used now
+
+		store.evict();
+		assertTrue(Files.exists(root.resolve(ArtifactCache.makeKey("mod", 0))));
+		assertFalse(Files.exists(root.resolve(ArtifactCache.makeKey("mod", 1))));
+		assertFalse(Files.exists(root.resolve(ArtifactCache.makeKey("mod", 2))));
+	}
+
+	@Test
+	void testEvictionWhilstProviding() throws Exception {
+		Path root = testDir.resolve("store");
+		RemapStore store = new RemapStore(root, 0); //Evicts everything it can
+		Path to = Files.createDirectories(testDir.resolve("project")).resolve("mod.jar");
+		String key = ArtifactCache.makeKey("mod", "busy");
+		byte[] contents = {5, 6, 7, 8};
+
+		CountDownLatch making = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> provide = executor.submit(() -> {
+				store.provide(key, to, temp -> {
+					making.countDown();
+					try {
+						finish.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					Files.write(temp, contents);
+				});
+				return null;
+			});
+			assertTrue(making.await(10, TimeUnit.SECONDS), "Provide never started");
+
+			Future<?> evict = executor.submit(() -> {
+				store.evict();
+				return null;
+			});
+			Thread.sleep(200);
+			assertFalse(evict.isDone(), "Evicted whilst a jar was being provided");
+
+			finish.countDown();
+			provide.get(10, TimeUnit.SECONDS);
+			evict.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		//The entry is only evicted once the project has its own link to it
+		assertFalse(Files.exists(root.resolve(key)));
+		assertArrayEquals(contents, Files.readAllBytes(to));
+		assertTrue(ArtifactCache.isValid(to, key));
+	}
+}
@@ -0,0 +1,91 @@
+package com.chocohead.loom.minecraft;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chocohead.loom.minecraft.MinecraftVersion.Download;
+import com.chocohead.loom.minecraft.MinecraftVersion.Library;
+
+class VersionReaderTest {
+	@TempDir
+	Path testDir;
+
+	private static String makeJSON() {
+		String current = OperatingSystem.get().name().toLowerCase(Locale.ENGLISH);
+		String other = OperatingSystem.get() == OperatingSystem.LINUX ? "osx" : "linux";
+
+		return ("{'arguments': {'game': ['--username', {'rules': [{'action': 'allow', 'features': {'is_demo_user': true}}], 'value': '--demo'}]},"
+				+ "'assetIndex': {'id': '1.14', 'sha1': 'abcd', 'size': 1, 'totalSize': 2, 'url': 'https://example.com/1.14.json'},"
+				+ "'downloads': {'client': {'sha1': 'c1', 'size': 10, 'url': 'https://example.com/client.jar'}, 'server': {'sha1': 's1', 'size': 20, 'url': 'https://example.com/server.jar'}},"
+				+ "'id': '1.14.4', 'javaVersion': {'majorVersion': 8},"
+				+ "'libraries': ["
+				+ "{'name': 'com.mojang:everywhere:1', 'downloads': {'artifact': {'path': 'a.jar', 'sha1': 'e1', 'size': 3, 'url': 'https://example.com/a.jar'}}},"
+				+ "{'name': 'com.mojang:not-here:1', 'downloads': {'artifact': {'sha1': 'n1', 'size': 3, 'url': 'https://example.com/b.jar'}},"
+				+ " 'rules': [{'action': 'allow'}, {'action': 'disallow', 'os': {'name': '" + current + "'}}]},"
+				+ "{'name': 'com.mojang:only-elsewhere:1', 'downloads': {'artifact': {'sha1': 'o1', 'size': 3, 'url': 'https://example.com/c.jar'}},"
+				+ " 'rules': [{'action': 'allow', 'os': {'name': '" + other + "', 'version': '^10\\\\.'}}]},"
+				+ "{'name': 'org.lwjgl:natives:2', 'natives': {'linux': 'natives-linux', 'osx': 'natives-osx', 'windows': 'natives-windows'},"
+				+ " 'extract': {'exclude': ['META-INF/']}, 'downloads': {'classifiers': {'natives-linux': {'sha1': 'l1', 'size': 4, 'url': 'https://example.com/l.jar'}}}},"
+				+ "{'name': 'org.lwjgl:any-arch:2', 'rules': [{'action': 'allow', 'os': {'arch': '.*'}}], 'downloads': {}}"
+				+ "], 'type': 'release'}").replace('\'', '"');
+	}
+
+	private static String describe(MinecraftVersion version) {
+		StringBuilder out = new StringBuilder(version.id).append('\n');
+		out.append(version.assetIndex.id).append(' ').append(version.assetIndex.url).append(' ').append(version.assetIndex.hash).append('\n');
+
+		for (Map.Entry<String, Download> entry : new TreeMap<>(version.downloads).entrySet()) {
+			out.append(entry.getKey()).append(' ').append(describe(entry.getValue())).append('\n');
+		}
+
+		for (Library library : version.libraries) {
+			if (!library.shouldUse()) continue;
+			out.append(library.name).append(' ').append(library.natives != null ? new TreeMap<>(library.natives) : null).append(' ').append(library.extract != null ? library.extract.exclude : null);
+
+			if (library.downloads != null) {
+				out.append(' ').append(describe(library.downloads.artifact));
+				for (Map.Entry<String, Download> entry : new TreeMap<>(library.downloads.classifiers).entrySet()) {
+					out.append(' ').append(entry.getKey()).append('=').append(describe(entry.getValue()));
+				}
+			}
+
+			out.append('\n');
+		}
+
+		return out.toString();
+	}
+
+	private static String describe(Download download) {
+		return download == null ? "null" : download.url + " " + download.hash + ' ' + download.size;
+	}
+
+	@Test
+	void testRead() throws IOException {
+		Path json = Files.write(testDir.resolve("version.json"), makeJSON().getBytes(StandardCharsets.UTF_8));
+
+		String expected;
+		try (Reader reader = Files.newBufferedReader(json)) {
+			expected = describe(MinecraftVersions.GSON.fromJson(reader, MinecraftVersion.class));
+		}
+
+		MinecraftVersion version = VersionReader.read(json);
+		assertEquals(expected, describe(version));
+		assertEquals(3, version.libraries.size(), "Wrong libraries kept: " + describe(version));
+		assertTrue(Files.exists(VersionReader.cacheFor(json)), "Version wasn't cached");
+
+		//Reading again should come from the cache, and give the same version
+		assertEquals(expected, describe(VersionReader.read(json)));
+	}
+}